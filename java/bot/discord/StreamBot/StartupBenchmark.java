@@ -0,0 +1,145 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import bot.discord.StreamBot.util.StartupTimer;
+
+/**
+ * StartupBenchmark.java measures how long Stream Bot takes to start by
+ * running training runs of it in new JVMs, first as they are and then
+ * with a class data sharing archive recorded by an earlier training run.
+ * For each it prints the time until the JVM exited and the time until
+ * Stream Bot was ready, as reported by StartupTimer. Class data sharing of
+ * application classes needs JDK 13 or later.
+ * <p>
+ * Usage: StartupBenchmark [runs]
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class StartupBenchmark {
+	/**
+	 * The number of runs of each kind by default.
+	 */
+	private static final int RUNS = 10;
+
+	/**
+	 * The text before the time Stream Bot was ready in the report.
+	 */
+	private static final String READY = "ready ";
+
+	/**
+	 * The main method of the benchmark.
+	 *
+	 * @param theArgs is the number of runs, optional.
+	 */
+	public static void main(final String[] theArgs) throws Exception {
+		final int runs = theArgs.length > 0 ? Integer.parseInt(theArgs[0])
+				: RUNS;
+		final File archive = File.createTempFile("streambot", ".jsa");
+		archive.delete();
+
+		try {
+			System.out.printf("%-8s %10s %10s %10s %10s%n", "mode",
+							  "exit p50", "exit min", "ready p50",
+							  "ready min");
+			measure("cold", runs);
+
+			// Records the classes loaded by a training run.
+			run("-XX:ArchiveClassesAtExit=" + archive.getPath());
+			if (archive.exists()) {
+				measure("appcds", runs, "-XX:SharedArchiveFile="
+						+ archive.getPath(), "-Xshare:auto");
+			} else {
+				System.out.println("appcds   archive could not be created");
+			}
+		} finally {
+			archive.delete();
+		}
+	}
+
+	/**
+	 * Runs theRuns training runs with theOptions and prints the median and
+	 * fastest times in milliseconds.
+	 *
+	 * @param theMode is the name printed for the runs.
+	 * @param theRuns is the number of runs.
+	 * @param theOptions are the JVM options of each run.
+	 */
+	private static void measure(final String theMode, final int theRuns,
+								final String... theOptions)
+								throws IOException, InterruptedException {
+		final List<Long> exits = new ArrayList<Long>();
+		final List<Long> readies = new ArrayList<Long>();
+
+		for (int i = 0; i < theRuns; i++) {
+			final long start = System.nanoTime();
+			final long ready = run(theOptions);
+			exits.add((System.nanoTime() - start) / 1000000);
+			if (ready >= 0) {
+				readies.add(ready);
+			}
+		}
+
+		Collections.sort(exits);
+		Collections.sort(readies);
+		System.out.printf("%-8s %10d %10d %10d %10d%n", theMode,
+						  exits.get(exits.size() / 2), exits.get(0),
+						  readies.isEmpty() ? -1 : readies.get(readies.size() / 2),
+						  readies.isEmpty() ? -1 : readies.get(0));
+	}
+
+	/**
+	 * Runs one training run of Stream Bot in a new JVM with theOptions and
+	 * waits for it to exit.
+	 *
+	 * @param theOptions are the JVM options of the run.
+	 * @return the time in milliseconds until Stream Bot was ready, or -1
+	 * if it did not report it.
+	 */
+	private static long run(final String... theOptions)
+			throws IOException, InterruptedException {
+		final List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+					+ File.separator + "java");
+		command.addAll(Arrays.asList(theOptions));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(StreamBot.class.getName());
+		command.add("--training");
+
+		final Process process = new ProcessBuilder(command)
+				.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		long result = -1;
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final int index = line.lastIndexOf(READY);
+				if (line.startsWith(StartupTimer.REPORT_PREFIX)
+					&& index >= 0) {
+					result = Long.parseLong(line.substring(index
+							+ READY.length(), line.indexOf(' ', index
+							+ READY.length())));
+				}
+			}
+		}
+
+		process.waitFor();
+		return result;
+	}
+}
@@ -5,15 +5,51 @@
 
 package bot.discord.StreamBot;
 
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import javax.security.auth.login.LoginException;
+import bot.discord.StreamBot.executables.Digests;
+import bot.discord.StreamBot.executables.LiveBoards;
 import bot.discord.StreamBot.listeners.CommandListener;
 import bot.discord.StreamBot.listeners.GuildJoinListener;
+import bot.discord.StreamBot.listeners.ReadyListener;
 import bot.discord.StreamBot.listeners.StreamListener;
+import bot.discord.StreamBot.pipeline.BotEvent;
+import bot.discord.StreamBot.pipeline.BotStages;
+import bot.discord.StreamBot.pipeline.EventPipeline;
+import bot.discord.StreamBot.profiling.Profiler;
+import bot.discord.StreamBot.system.CommandThrottle;
+import bot.discord.StreamBot.system.ConfigurationWatcher;
 import bot.discord.StreamBot.system.Preferences;
+import bot.discord.StreamBot.system.ShardLeases;
+import bot.discord.StreamBot.system.TimingWheel;
+import bot.discord.StreamBot.util.Configuration;
 import bot.discord.StreamBot.util.References;
+import bot.discord.StreamBot.util.StartupTimer;
 import net.dv8tion.jda.core.AccountType;
 import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.JDABuilder;
+import net.dv8tion.jda.core.entities.Game;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.user.update.UserUpdateGameEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+import net.dv8tion.jda.core.utils.SessionController;
+import net.dv8tion.jda.core.utils.SessionControllerAdapter;
 
 /**
  * StreamBot.java is driver class for constructing the Stream Bot. Stream
@@ -26,38 +62,432 @@ import net.dv8tion.jda.core.JDABuilder;
  */
 public final class StreamBot {
 	/**
-	 * The main method of this program. Constructs the JDA with StreamBot's
-	 * token ID and adds all necessary listeners. 
+	 * The name of the system preferences file in the cluster directory.
+	 */
+	private static final String CLUSTER_PREFERENCES = "preferences.txt";
+	
+	/**
+	 * The environment variable that may hold the location of the
+	 * configuration file.
+	 */
+	private static final String CONFIGURATION_VARIABLE = "STREAMBOT_CONFIG";
+	
+	/**
+	 * The argument that starts a training run instead of logging in.
+	 */
+	private static final String TRAINING_ARGUMENT = "--training";
+	
+	/**
+	 * The number of synthetic events sent through the pipeline by a
+	 * training run.
+	 */
+	private static final int TRAINING_EVENTS = 1000;
+	
+	/**
+	 * The URL of the stream of training runs.
+	 */
+	private static final String TRAINING_URL = "https://www.twitch.tv/training";
+	
+	/**
+	 * The session controller shared by every shard of this process, so
+	 * that shards log in one at a time as Discord requires.
+	 */
+	private static final SessionController SESSIONS =
+			new SessionControllerAdapter();
+	
+	/**
+	 * The main method of this program. Loads the configuration, then
+	 * constructs the JDA with StreamBot's token ID and adds all necessary
+	 * listeners. If a cluster directory is configured, only the shards
+	 * this process holds the lease of are started instead.
+	 * <p>
+	 * The system preferences are loaded while logging in. Events received
+	 * before they are loaded wait in the pipeline, which is only started
+	 * once they are. With the argument "--training", Stream Bot goes
+	 * through the same steps without logging in, sends synthetic events
+	 * through the pipeline and exits, so the build can record the classes
+	 * used at startup.
 	 * 
 	 * @param theArgs used for command line arguments.
 	 */
     public static void main(final String[] theArgs) throws Exception {
+    	StartupTimer.mark("main");
+    	final boolean training = Arrays.asList(theArgs).contains(
+    			TRAINING_ARGUMENT);
+    	
+    	// Loads the configuration and reloads it whenever it changes.
+    	final String file = System.getenv(CONFIGURATION_VARIABLE);
+    	final ConfigurationWatcher watcher = new ConfigurationWatcher(
+    			file == null ? References.CONFIGURATION_FILE : file);
+    	watcher.reload();
+    	if (!training) {
+    		watcher.start();
+    	}
+    	final Configuration config = Configuration.get();
+    	StartupTimer.mark("configuration");
+    	
+    	// Keeps a flight recording of the last minutes for profile_dump.
+    	Profiler.start();
+    	
+    	// The scheduler for background work, resized with the configuration.
+    	final ScheduledThreadPoolExecutor scheduler =
+    			new ScheduledThreadPoolExecutor(config.getSchedulerThreads());
+    	Configuration.addListener(theConfiguration -> scheduler.setCorePoolSize(
+    			theConfiguration.getSchedulerThreads()));
+    	
+    	// The wheel that sends digests and edits live boards when due.
+    	final TimingWheel wheel = new TimingWheel(
+    			References.DIGEST_TICK_MILLIS);
+    	wheel.start(scheduler);
+    	
+    	// The throttle shared by every shard, forgetting idle users.
+    	final CommandThrottle throttle = new CommandThrottle();
+    	scheduler.scheduleAtFixedRate(throttle::sweep,
+    			References.THROTTLE_SWEEP_MILLIS,
+    			References.THROTTLE_SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    	
+    	if (config.getClusterDirectory() == null || training) {
+    		// Initializes the preferences settings while logging in.
+        	final Preferences pref = new Preferences(
+        			config.getPreferencesFile());
+        	final EventPipeline pipeline = buildPipeline(pref, wheel,
+        			throttle);
+        	final CompletableFuture<Boolean> loading =
+        			CompletableFuture.supplyAsync(() -> {
+        		final boolean loaded = pref.init();
+        		StartupTimer.mark("preferences");
+        		return loaded;
+        	});
+        	
+        	JDA jda = null;
+        	if (training) {
+        		newBuilder(pipeline, -1);
+        		StartupTimer.mark("listeners");
+        	} else {
+        		jda = buildShard(pipeline, -1);
+        		// Without a gateway the scheduler alone would keep it running.
+        		if (jda == null) {
+        			scheduler.shutdownNow();
+        			System.exit(1);
+        		}
+        	}
+        	
+        	/* If loading the preferences throws, the pipeline is never
+        	   started, and the bot would look online while its listeners
+        	   block on a full pipeline, so it logs out and exits instead.
+        	   If the file could not be read, the bot keeps running but
+        	   does not reconcile guilds with it. */
+        	try {
+        		if (!loading.join()) {
+        			warnNotLoaded();
+        		}
+        	} catch (final CompletionException ex) {
+        		ex.printStackTrace();
+        		if (jda != null) {
+        			jda.shutdownNow();
+        		}
+        		System.exit(1);
+        	}
+        	pipeline.start();
+        	StartupTimer.mark("pipeline");
+        	
+        	if (training) {
+        		train(pipeline);
+        		StartupTimer.mark("ready");
+        		StartupTimer.report();
+        		System.exit(0);
+        	}
+    	} else {
+    		startCluster(new File(config.getClusterDirectory()), scheduler,
+    					 wheel, throttle);
+    	}
+    }
+    
+    /**
+     * Starts Stream Bot as one process of a cluster sharing theDirectory.
+     * System preferences are stored in theDirectory and changes made by
+     * other processes are loaded periodically. This process takes the
+     * lease of as many unowned shards as it may run, and keeps checking for
+     * shards left behind by processes that stopped.
+     * 
+     * @param theDirectory is the directory shared by the cluster.
+     * @param theScheduler is the scheduler for the periodic checks.
+     * @param theWheel is the wheel that sends digests and edits live
+     * boards when they are due.
+     * @param theThrottle is the throttle that limits how often commands
+     * may be used.
+     */
+    private static void startCluster(final File theDirectory,
+    								 final ScheduledExecutorService theScheduler,
+    								 final TimingWheel theWheel,
+    								 final CommandThrottle theThrottle) {
+    	final Configuration config = Configuration.get();
+    	final Map<Integer, JDA> shards = new ConcurrentHashMap<Integer, JDA>();
+    	final ShardLeases leases = new ShardLeases(theDirectory,
+    			config.getNodeID(), config.getShardTotal());
+    	
+    	// Initializes the shared preferences settings for later access.
+    	final Preferences pref = new Preferences(
+    			new File(theDirectory, CLUSTER_PREFERENCES).getPath());
+    	if (!pref.init()) {
+    		warnNotLoaded();
+    	}
+    	StartupTimer.mark("preferences");
+    	final EventPipeline pipeline = buildPipeline(pref, theWheel,
+    			theThrottle);
+    	pipeline.start();
+    	
+    	/* Loads changes made by other processes and starts each shard this
+    	   process takes the lease of. */
+    	repeat(theScheduler, 0, () -> {
+    		pref.refresh();
+    		for (final int shard: leases.acquire(
+    				Configuration.get().getMaxShards())) {
+    			final JDA jda = buildShard(pipeline, shard);
+    			if (jda == null) {
+    				leases.release(shard);
+    			} else {
+    				shards.put(shard, jda);
+    			}
+    		}
+    	});
+    	
+    	// Hands the shards over to other processes when shutting down.
+    	Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+    		for (final JDA jda: shards.values()) {
+    			jda.shutdown();
+    		}
+    		leases.releaseAll();
+    	}));
+    }
+    
+    /**
+     * Tells the operator that the system preferences could not be read,
+     * so guilds are not reconciled with them until they are.
+     */
+    private static void warnNotLoaded() {
+    	System.err.println("System preferences could not be read; guilds "
+    					   + "will not be reconciled with them.");
+    }
+    
+    /**
+     * Runs theTask on theScheduler after theDelay milliseconds, and then
+     * again after each run. The time between runs is read from the current
+     * configuration each time, so changes to it apply from the next run.
+     * 
+     * @param theScheduler is the scheduler that runs theTask.
+     * @param theDelay is the time in milliseconds before the first run.
+     * @param theTask is the task being run.
+     */
+    private static void repeat(final ScheduledExecutorService theScheduler,
+    						   final long theDelay, final Runnable theTask) {
+    	theScheduler.schedule(() -> {
+    		try {
+    			theTask.run();
+    		} finally {
+    			repeat(theScheduler,
+    				   Configuration.get().getClusterSyncMillis(), theTask);
+    		}
+    	}, theDelay, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Builds the pipeline that handles the events of every shard of this
+     * process. The pipeline still needs to be started.
+     * 
+     * @param thePref is model that stores the system preferences.
+     * @param theWheel is the wheel that sends digests and edits live
+     * boards when they are due.
+     * @param theThrottle is the throttle that limits how often commands
+     * may be used.
+     * @return the pipeline.
+     */
+    private static EventPipeline buildPipeline(final Preferences thePref,
+    										   final TimingWheel theWheel,
+    										   final CommandThrottle theThrottle) {
+    	final Configuration config = Configuration.get();
+    	return new BotStages(thePref, new Digests(theWheel, thePref),
+    			new LiveBoards(theWheel, thePref), theThrottle).build(
+    			config.getPipelineSize(), config.getPipelineDispatchers());
+    }
+    
+    /**
+     * Constructs the JDA for theShard with all listeners and starts
+     * logging in. The JDA connects to the gateway in the background.
+     * Returns null if the JDA could not be constructed.
+     * 
+     * @param thePipeline is the pipeline that handles the events.
+     * @param theShard is the ID of the shard, or -1 to run every shard.
+     * @return the JDA of theShard, or null if it failed to log in.
+     */
+    private static JDA buildShard(final EventPipeline thePipeline,
+    							  final int theShard) {
     	// The JDA for Stream Bot.
-    	@SuppressWarnings("unused")
-		JDA jda;
+		JDA jda = null;
     	
-    	// The builder that will create the JDA.
-    	JDABuilder builder =  new JDABuilder(AccountType.BOT);
-        builder.setToken(References.TOKEN);
-        builder.setAutoReconnect(true);
+    	// The builder that will create the JDA, with all listeners.
+    	final JDABuilder builder = newBuilder(thePipeline, theShard);
+    	StartupTimer.mark("listeners");
         
-        // Attempts to build the JDA and add all listeners.
+        // Attempts to build the JDA.
         try {
-        	// Initializes the preferences settings for later access.
-        	Preferences pref = new Preferences();
-        	pref.init();
-        	
-        	// Adds the listeners to the builder.
-        	builder.addEventListener(new CommandListener(pref));
-        	builder.addEventListener(new GuildJoinListener(pref));
-        	builder.addEventListener(new StreamListener(pref));
-        	
-        	// Constructs the JDA.
-        	jda = builder.buildBlocking();
+        	jda = builder.buildAsync();
+        	StartupTimer.mark("login");
         } catch (final LoginException ex) {
         	ex.printStackTrace();
-        } catch (final InterruptedException ex) {
-        	ex.printStackTrace();
         }
+        
+        return jda;
+    }
+    
+    /**
+     * Returns a JDABuilder for theShard with all listeners added.
+     * 
+     * @param thePipeline is the pipeline that handles the events.
+     * @param theShard is the ID of the shard, or -1 to run every shard.
+     * @return the builder.
+     */
+    private static JDABuilder newBuilder(final EventPipeline thePipeline,
+    									 final int theShard) {
+    	final JDABuilder builder = new JDABuilder(AccountType.BOT);
+        builder.setToken(Configuration.get().getToken());
+        builder.setAutoReconnect(true);
+        builder.setSessionController(SESSIONS);
+        if (theShard >= 0) {
+        	builder.useSharding(theShard,
+        						Configuration.get().getShardTotal());
+        }
+        
+        // Adds the listeners to the builder.
+        builder.addEventListener(new CommandListener(thePipeline));
+        builder.addEventListener(new GuildJoinListener(thePipeline));
+        builder.addEventListener(new StreamListener(thePipeline));
+        builder.addEventListener(new ReadyListener(thePipeline));
+        
+        // Reports how long startup took once connected.
+        builder.addEventListener(new ListenerAdapter() {
+        	@Override
+        	public void onReady(final ReadyEvent theEvent) {
+        		StartupTimer.mark("ready");
+        		StartupTimer.report();
+        	}
+        });
+        
+        return builder;
+    }
+    
+    /**
+     * Sends synthetic stream starts and ends through the StreamListener
+     * of thePipeline, and synthetic commands from bots, and waits until
+     * they have been handled. The stream events go through every stage,
+     * including rendering and dispatching notifications, with stub
+     * guilds and users that have no channels, so nothing is sent.
+     * 
+     * @param thePipeline is the started pipeline.
+     */
+    private static void train(final EventPipeline thePipeline) {
+    	final JDA jda = stub(JDA.class, Collections.<String, Object>emptyMap());
+    	final StreamListener listener = new StreamListener(thePipeline);
+    	final Game game = Game.streaming("Training", TRAINING_URL);
+    	final String help = Configuration.get().getCommandPrefix() + "help";
+    	long sequence = -1;
+    	
+    	for (int i = 0; i < TRAINING_EVENTS; i++) {
+    		final Map<String, Object> guild = new HashMap<String, Object>();
+    		guild.put("getName", "training-" + i);
+    		guild.put("getId", Integer.toString(i));
+    		guild.put("getIdLong", (long) i);
+    		guild.put("getJDA", jda);
+    		final Map<String, Object> user = new HashMap<String, Object>();
+    		user.put("getName", "user-" + i);
+    		user.put("getId", Integer.toString(i));
+    		user.put("getIdLong", (long) i);
+    		final Map<String, Object> member = new HashMap<String, Object>();
+    		member.put("getGuild", stub(Guild.class, guild));
+    		member.put("getUser", stub(User.class, user));
+    		member.put("getJDA", jda);
+    		final Member stub = stub(Member.class, member);
+    		
+    		// Starts and then ends a stream in a guild without channels.
+    		listener.onUserUpdateGame(presence(jda, stub, null, game));
+    		listener.onUserUpdateGame(presence(jda, stub, game, null));
+    		
+    		sequence = thePipeline.claim();
+    		try {
+    			thePipeline.get(sequence).set(BotEvent.Type.MESSAGE, i, i,
+    					true, false, help, null);
+    		} finally {
+    			thePipeline.publish(sequence);
+    		}
+    	}
+    	
+    	while (thePipeline.getHandled() < sequence) {
+    		Thread.yield();
+    	}
+    }
+    
+    /**
+     * Returns a game change of theMember from theOld to theNew.
+     * 
+     * @param theJDA is the stub JDA.
+     * @param theMember is the stub member whose game changed.
+     * @param theOld is the game before, or null.
+     * @param theNew is the game after, or null.
+     * @return the event of the game change.
+     */
+    private static UserUpdateGameEvent presence(final JDA theJDA,
+    											final Member theMember,
+    											final Game theOld,
+    											final Game theNew) {
+    	return new UserUpdateGameEvent(theJDA, 0, theMember, theOld) {
+    		@Override
+    		public Game getNewGame() {
+    			return theNew;
+    		}
+    		
+    		@Override
+    		public Game getOldGame() {
+    			return theOld;
+    		}
+    		
+    		@Override
+    		public User getEntity() {
+    			return theMember.getUser();
+    		}
+    		
+    		@Override
+    		public Guild getGuild() {
+    			return theMember.getGuild();
+    		}
+    		
+    		@Override
+    		public Member getMember() {
+    			return theMember;
+    		}
+    	};
+    }
+    
+    /**
+     * Returns a stub of theType for training runs. Methods named in
+     * theAnswers return the value given; every other method returns null,
+     * false or 0, so a stub guild has no channels or owner.
+     * 
+     * @param theType is the interface being stubbed.
+     * @param theAnswers is a map of method names with their results.
+     * @return the stub.
+     */
+    private static <T> T stub(final Class<T> theType,
+    						  final Map<String, Object> theAnswers) {
+    	return theType.cast(Proxy.newProxyInstance(
+    			StreamBot.class.getClassLoader(), new Class<?>[] {theType},
+    			(theProxy, theMethod, theArgs) -> {
+    		final Class<?> type = theMethod.getReturnType();
+    		Object result = theAnswers.get(theMethod.getName());
+    		if (result == null && type.isPrimitive() && type != void.class) {
+    			// The default value of a primitive, such as 0L or false.
+    			result = Array.get(Array.newInstance(type, 1), 0);
+    		}
+    		return result;
+    	}));
     }
 }
@@ -5,11 +5,25 @@
 
 package bot.discord.StreamBot.executables;
 
+import java.io.IOException;
 import java.io.SyncFailedException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
+import bot.discord.StreamBot.profiling.Profiler;
+import bot.discord.StreamBot.system.CircuitBreaker;
+import bot.discord.StreamBot.system.CommandThrottle;
 import bot.discord.StreamBot.system.Preferences;
+import bot.discord.StreamBot.util.Configuration;
+import bot.discord.StreamBot.util.References;
+import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.Permission;
+import net.dv8tion.jda.core.entities.ChannelType;
+import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.entities.Role;
+import net.dv8tion.jda.core.entities.TextChannel;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
 
 /**
@@ -20,6 +34,151 @@ import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
  * @version 1.0
  */
 public final class Commands {
+	/**
+	 * Returns the name of the command in theCommand, or null if it is not
+	 * a command. Only "set_digest" and "set_board" take an argument.
+	 * 
+	 * @param theCommand is the message without the command prefix.
+	 * @return the name of the command, or null.
+	 */
+	public static String commandName(final String theCommand) {
+		String result = null;
+		
+		if ("help".equals(theCommand) || "ping".equals(theCommand)
+			|| "set_default_channel".equals(theCommand)
+			|| "breakers".equals(theCommand)
+			|| "throttles".equals(theCommand)
+			|| "profile_dump".equals(theCommand)) {
+			result = theCommand;
+		} else if (hasArgument(theCommand, "set_digest")) {
+			result = "set_digest";
+		} else if (hasArgument(theCommand, "set_board")) {
+			result = "set_board";
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns true if theCommand is the command theName, either alone or
+	 * followed by whitespace and an argument.
+	 * 
+	 * @param theCommand is the message without the command prefix.
+	 * @param theName is the name of a command that takes an argument.
+	 * @return whether theCommand is theName.
+	 */
+	private static boolean hasArgument(final String theCommand,
+									   final String theName) {
+		return theCommand.startsWith(theName)
+			   && (theCommand.length() == theName.length()
+				   || Character.isWhitespace(
+						   theCommand.charAt(theName.length())));
+	}
+	
+	/**
+	 * Executes the command theName, found by commandName, in the message
+	 * of theEvent.
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 * @param theName is the name of the command.
+	 * @param thePref is model that stores the system preferences.
+	 * @param theThrottle is the throttle that limits how often commands
+	 * may be used.
+	 * @param theBoards are the live boards of guilds.
+	 */
+	public static void execute(final MessageReceivedEvent theEvent,
+							   final String theName,
+							   final Preferences thePref,
+							   final CommandThrottle theThrottle,
+							   final LiveBoards theBoards) {
+		if ("help".equals(theName)) {
+			Notifications.sendHelp(theEvent);
+		} else if ("ping".equals(theName)) {
+			Notifications.sendPing(theEvent);
+		} else if ("set_default_channel".equals(theName)) {
+			setDefaultChannel(theEvent, thePref);
+		} else if ("set_digest".equals(theName)) {
+			final String content = theEvent.getMessage().getContentRaw();
+			setDigest(theEvent, thePref, content.substring(
+					content.indexOf(theName) + theName.length()).trim());
+		} else if ("set_board".equals(theName)) {
+			final String content = theEvent.getMessage().getContentRaw();
+			setBoard(theEvent, thePref, theBoards, content.substring(
+					content.indexOf(theName) + theName.length()).trim());
+		} else if ("breakers".equals(theName)) {
+			showBreakers(theEvent);
+		} else if ("throttles".equals(theName)) {
+			showThrottles(theEvent, theThrottle);
+		} else if ("profile_dump".equals(theName)) {
+			dumpProfile(theEvent);
+		}
+	}
+	
+	/**
+	 * Initializes the system preferences of theGuild with default values
+	 * and sends an introductory message. A guild without a system channel
+	 * gets its entry once a command sets a channel. Call this function
+	 * when Stream Bot joins a server.
+	 * 
+	 * @param theGuild is the guild Stream Bot just joined.
+	 * @param thePref is model that stores the system preferences.
+	 */
+	public static void joinGuild(final Guild theGuild,
+								 final Preferences thePref) {
+		/* Adds the entry to thePref, if it failed to save the
+		   information then it will send a message to the guild, informing
+		   them that an error has occurred. */
+		if (theGuild.getSystemChannel() != null) {
+			try {
+				thePref.addGuild(theGuild.getName(),
+								 theGuild.getSystemChannel().getId());
+			} catch (final SyncFailedException ex) {
+				Notifications.failedSave(theGuild);
+			}
+		}
+		
+		Notifications.sendIntroduction(theGuild, thePref);
+	}
+	
+	/**
+	 * Adds default system preferences for every guild of theJDA that has
+	 * none, using its system channel, and saves them at once. Entries of
+	 * guilds Stream Bot is no longer in are removed as well, unless theJDA
+	 * is one shard of several and so does not see every guild, or some of
+	 * its guilds are unavailable. Does nothing if the system preferences
+	 * were never loaded. Call this function when Stream Bot is ready.
+	 * 
+	 * @param theJDA is the JDA that is ready.
+	 * @param thePref is model that stores the system preferences.
+	 */
+	public static void reconcileGuilds(final JDA theJDA,
+									   final Preferences thePref) {
+		// Settings read from nowhere must not replace the ones on disk.
+		if (!thePref.isLoaded()) {
+			return;
+		}
+		
+		final Map<String, String> guilds = new HashMap<String, String>();
+		boolean available = true;
+		for (final Guild guild: theJDA.getGuilds()) {
+			// Guilds in an outage have no name yet, so none are removed.
+			if (guild.isAvailable()) {
+				guilds.put(guild.getName(), guild.getSystemChannel() == null
+						   ? null : guild.getSystemChannel().getId());
+			} else {
+				available = false;
+			}
+		}
+		
+		try {
+			thePref.reconcile(guilds, available
+							  && (theJDA.getShardInfo() == null
+							  || theJDA.getShardInfo().getShardTotal() == 1));
+		} catch (final SyncFailedException ex) {
+			ex.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Sets the channel that the "set_default_channel" command was called
 	 * in, as the default channel for messages that Stream Bot will send.
@@ -37,12 +196,8 @@ public final class Commands {
 		
 		/* Checks to see if this user has permission to manage channels.
 		   User must have the permission to "Manage Channels". */
-		boolean permission = false;
-		for (final Role role: theEvent.getMember().getRoles()) {
-			if (role.hasPermission(Permission.MANAGE_CHANNEL)) {
-				permission = true;
-			}
-		}
+		final boolean permission = hasPermission(theEvent,
+				Permission.MANAGE_CHANNEL);
 		
 		
 		
@@ -51,18 +206,8 @@ public final class Commands {
 			try {
 				thePref.setDefaultChannel(theEvent.getGuild().getName(),
 						                  theEvent.getChannel().getId());
-			} catch (final IllegalArgumentException ex) {
-				/* If an IllegalArgumentException is thrown then attempt to
-				   add the guild to preferences with the desired values and
-				   any default values if necessary. */
-				try {
-					thePref.addGuild(theEvent.getGuild().getName(),
-			                  		 theEvent.getChannel().getId());
-				} catch (final SyncFailedException ex2) {
-					Notifications.failedSave(theEvent.getGuild(), thePref);
-				}
 			} catch (final SyncFailedException ex) {
-				Notifications.failedSave(theEvent.getGuild(), thePref);
+				Notifications.failedSave(theEvent.getGuild());
 			}
 			
 			/* Inform the user that the default channel was successfully
@@ -90,4 +235,342 @@ public final class Commands {
 		   unsuccessful in setting the default channel. */
 		theEvent.getChannel().sendMessage(builder.toString()).queue();
 	}
+	
+	/**
+	 * Sets how often stream notifications for this guild are collected
+	 * into a digest. theArgument is either a number of minutes or "off" to
+	 * send a notification for every stream. Call this function when a user
+	 * uses the command "set_digest". User must have the permission to
+	 * "Manage Channels".
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 * @param thePref is model that stores the system preferences.
+	 * @param theArgument is the text following the command.
+	 */
+	public static void setDigest(final MessageReceivedEvent theEvent,
+								 final Preferences thePref,
+								 final String theArgument) {
+		final StringBuilder builder = new StringBuilder();
+		final Guild guild = theEvent.getGuild();
+		
+		// The time in minutes between digests, or -1 if invalid.
+		int minutes = -1;
+		if ("off".equalsIgnoreCase(theArgument)) {
+			minutes = 0;
+		} else {
+			try {
+				minutes = Integer.parseInt(theArgument);
+			} catch (final NumberFormatException ex) {
+				minutes = -1;
+			}
+			if (minutes < 1 || minutes > References.MAX_DIGEST_MINUTES) {
+				minutes = -1;
+			}
+		}
+		
+		if (!hasPermission(theEvent, Permission.MANAGE_CHANNEL)) {
+			builder.append("You do not have permission to set digests ");
+			builder.append(theEvent.getAuthor().getAsMention());
+			builder.append(". You need to have permission to manage ");
+			builder.append("channels.");
+		} else if (minutes < 0) {
+			builder.append(theEvent.getAuthor().getAsMention());
+			builder.append(" Please give a number of minutes from 1 to ");
+			builder.append(References.MAX_DIGEST_MINUTES);
+			builder.append(", or `off`.");
+		} else {
+			try {
+				thePref.setDigestMinutes(guild.getName(),
+						guild.getSystemChannel() != null
+						? guild.getSystemChannel().getId()
+						: theEvent.getChannel().getId(), minutes);
+			} catch (final SyncFailedException ex) {
+				Notifications.failedSave(guild);
+			}
+			
+			builder.append(theEvent.getAuthor().getAsMention());
+			if (minutes == 0) {
+				builder.append(" Stream Bot will send a notification for ");
+				builder.append("every stream.");
+			} else {
+				builder.append(" Stream Bot will send the streams started ");
+				builder.append("every ");
+				builder.append(minutes);
+				builder.append(" minutes in one message.");
+			}
+		}
+		
+		theEvent.getChannel().sendMessage(builder.toString()).queue();
+	}
+	
+	/**
+	 * Turns the live board of this guild on or off. theArgument is either
+	 * "on" or "off". While it is on, Stream Bot keeps one pinned message
+	 * in the default channel listing everyone streaming instead of sending
+	 * notifications. Turning it on fills the board with the members
+	 * streaming now, and turning it off edits that message to say so and
+	 * unpins it. Call this function when a user uses the command
+	 * "set_board". User must have the permission to "Manage Channels".
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 * @param thePref is model that stores the system preferences.
+	 * @param theBoards are the live boards of guilds.
+	 * @param theArgument is the text following the command.
+	 */
+	public static void setBoard(final MessageReceivedEvent theEvent,
+								final Preferences thePref,
+								final LiveBoards theBoards,
+								final String theArgument) {
+		final StringBuilder builder = new StringBuilder();
+		final Guild guild = theEvent.getGuild();
+		final boolean on = "on".equalsIgnoreCase(theArgument);
+		
+		if (!hasPermission(theEvent, Permission.MANAGE_CHANNEL)) {
+			builder.append("You do not have permission to set the live ");
+			builder.append("board ");
+			builder.append(theEvent.getAuthor().getAsMention());
+			builder.append(". You need to have permission to manage ");
+			builder.append("channels.");
+		} else if (!on && !"off".equalsIgnoreCase(theArgument)) {
+			builder.append(theEvent.getAuthor().getAsMention());
+			builder.append(" Please give `on` or `off`.");
+		} else {
+			// Remembers the board message before turning it off forgets it.
+			final String channelID = thePref.findDefaultChannel(
+					guild.getName());
+			final String messageID = thePref.findBoardMessage(guild.getName());
+			try {
+				thePref.setBoard(guild.getName(),
+						guild.getSystemChannel() != null
+						? guild.getSystemChannel().getId()
+						: theEvent.getChannel().getId(), on);
+			} catch (final SyncFailedException ex) {
+				Notifications.failedSave(guild);
+			}
+			if (on) {
+				theBoards.fill(guild);
+			} else {
+				Notifications.closeBoard(guild, channelID, messageID);
+			}
+			
+			builder.append(theEvent.getAuthor().getAsMention());
+			if (on) {
+				builder.append(" Stream Bot will list everyone streaming ");
+				builder.append("in one pinned message in the default ");
+				builder.append("channel.");
+			} else {
+				builder.append(" Stream Bot will send a notification for ");
+				builder.append("every stream.");
+			}
+		}
+		
+		theEvent.getChannel().sendMessage(builder.toString()).queue();
+	}
+	
+	/**
+	 * Sends a report of the circuit breakers guarding messages sent by
+	 * Stream Bot to the channel that the "breakers" command was called in.
+	 * The report lists how often breakers have opened, how many messages
+	 * were dropped, and the state of this guild and any of its channels
+	 * that are not closed. The counts cover every guild, so only the
+	 * operator of Stream Bot may see them. Call this function when a user
+	 * uses the command "breakers".
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 */
+	public static void showBreakers(final MessageReceivedEvent theEvent) {
+		checkOperator(theEvent, theOperator -> showBreakers(theEvent,
+															theOperator));
+	}
+	
+	/**
+	 * Sends the report of showBreakers if theOperator is true.
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 * @param theOperator is whether the author is the operator.
+	 */
+	private static void showBreakers(final MessageReceivedEvent theEvent,
+									 final boolean theOperator) {
+		final StringBuilder builder = new StringBuilder();
+		
+		if (theOperator) {
+			final CircuitBreaker breaker = Notifications.getCircuitBreaker();
+			final Guild guild = theEvent.getGuild();
+			
+			builder.append("**CIRCUIT BREAKERS:**\n");
+			builder.append("Opened: ");
+			builder.append(breaker.getTrips());
+			builder.append(", dropped messages: ");
+			builder.append(breaker.getRejections());
+			// A direct message has no server to report on.
+			if (guild != null) {
+				builder.append("\nThis server: ");
+				builder.append(breaker.getState(Notifications.GUILD_KEY
+												+ guild.getId()));
+				for (final TextChannel channel: guild.getTextChannels()) {
+					final CircuitBreaker.State state = breaker.getState(
+							Notifications.CHANNEL_KEY + channel.getId());
+					if (state != CircuitBreaker.State.CLOSED) {
+						builder.append("\n");
+						builder.append(channel.getAsMention());
+						builder.append(": ");
+						builder.append(state);
+					}
+				}
+			}
+		} else {
+			builder.append("You do not have permission to view the ");
+			builder.append("circuit breakers ");
+			builder.append(theEvent.getAuthor().getAsMention());
+			builder.append(". Only the operator of Stream Bot can.");
+		}
+		
+		theEvent.getChannel().sendMessage(builder.toString()).queue();
+	}
+	
+	/**
+	 * Sends the number of times each command was ignored for being used
+	 * too often to the channel that the "throttles" command was called
+	 * in. The counts cover every guild, so only the operator of Stream
+	 * Bot may see them. Call this function when a user uses the command
+	 * "throttles".
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 * @param theThrottle is the throttle that limits how often commands
+	 * may be used.
+	 */
+	public static void showThrottles(final MessageReceivedEvent theEvent,
+									 final CommandThrottle theThrottle) {
+		checkOperator(theEvent, theOperator -> showThrottles(theEvent,
+				theThrottle, theOperator));
+	}
+	
+	/**
+	 * Sends the report of showThrottles if theOperator is true.
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 * @param theThrottle is the throttle that limits how often commands
+	 * may be used.
+	 * @param theOperator is whether the author is the operator.
+	 */
+	private static void showThrottles(final MessageReceivedEvent theEvent,
+									  final CommandThrottle theThrottle,
+									  final boolean theOperator) {
+		final StringBuilder builder = new StringBuilder();
+		
+		if (theOperator) {
+			builder.append("**IGNORED COMMANDS:**");
+			for (final Map.Entry<String, Long> entry:
+				 theThrottle.getDroppedCounts().entrySet()) {
+				builder.append("\n`");
+				builder.append(entry.getKey());
+				builder.append("`: ");
+				builder.append(entry.getValue());
+			}
+		} else {
+			builder.append("You do not have permission to view ignored ");
+			builder.append("commands ");
+			builder.append(theEvent.getAuthor().getAsMention());
+			builder.append(". Only the operator of Stream Bot can.");
+		}
+		
+		theEvent.getChannel().sendMessage(builder.toString()).queue();
+	}
+	
+	/**
+	 * Saves the events kept by the always-on flight recording to a file
+	 * and sends its name to the channel that the "profile_dump" command
+	 * was called in. The file can be summarized with ProfileAnalyzer. Call
+	 * this function when a user uses the command "profile_dump". Only the
+	 * user set as "profiling.owner_id", or the owner of the bot
+	 * application if there is none, may save the recording.
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 */
+	public static void dumpProfile(final MessageReceivedEvent theEvent) {
+		checkOperator(theEvent, theOperator -> dumpProfile(theEvent,
+														   theOperator));
+	}
+	
+	/**
+	 * Saves the flight recording for dumpProfile if theOperator is true,
+	 * and answers in the channel.
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 * @param theOperator is whether the author is the operator.
+	 */
+	private static void dumpProfile(final MessageReceivedEvent theEvent,
+									final boolean theOperator) {
+		final StringBuilder builder = new StringBuilder();
+		
+		if (theOperator) {
+			try {
+				final Path file = Profiler.dump();
+				if (file == null) {
+					builder.append("Profiling is turned off.");
+				} else {
+					builder.append("The flight recording was saved to `");
+					builder.append(file.getFileName());
+					builder.append("`.");
+				}
+			} catch (final IOException ex) {
+				ex.printStackTrace();
+				builder.append("The flight recording could not be saved.");
+			}
+		} else {
+			builder.append("You do not have permission to save the ");
+			builder.append("flight recording ");
+			builder.append(theEvent.getAuthor().getAsMention());
+			builder.append(". Only the operator of Stream Bot can.");
+		}
+		
+		theEvent.getChannel().sendMessage(builder.toString()).queue();
+	}
+	
+	/**
+	 * Returns true if the author of theEvent has a role with
+	 * thePermission. Returns false for direct messages, which have no
+	 * member.
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 * @param thePermission is the permission being checked for.
+	 * @return whether the author has thePermission.
+	 */
+	private static boolean hasPermission(final MessageReceivedEvent theEvent,
+										 final Permission thePermission) {
+		boolean permission = false;
+		// Direct messages have no member and so no roles.
+		if (theEvent.isFromType(ChannelType.TEXT)) {
+			for (final Role role: theEvent.getMember().getRoles()) {
+				if (role.hasPermission(thePermission)) {
+					permission = true;
+				}
+			}
+		}
+		return permission;
+	}
+	
+	/**
+	 * Runs theAction with whether the author of theEvent is the operator
+	 * of Stream Bot: the user set as "profiling.owner_id", or the owner of
+	 * the bot application if there is none. Commands that report on every
+	 * guild Stream Bot is in are only for the operator.
+	 * 
+	 * @param theEvent is the message event sent to the text channels.
+	 * @param theAction is run with whether the author is the operator.
+	 */
+	private static void checkOperator(final MessageReceivedEvent theEvent,
+									  final Consumer<Boolean> theAction) {
+		final String author = theEvent.getAuthor().getId();
+		final String owner = Configuration.get().getProfilingOwnerID();
+		
+		if (owner != null) {
+			theAction.accept(author.equals(owner));
+		} else {
+			theEvent.getJDA().asBot().getApplicationInfo().queue(
+					theInfo -> theAction.accept(
+							author.equals(theInfo.getOwner().getId())),
+					theError -> theAction.accept(false));
+		}
+	}
 }
@@ -0,0 +1,238 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.executables;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bot.discord.StreamBot.system.Preferences;
+import bot.discord.StreamBot.system.TimingWheel;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Game;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.events.user.update.UserUpdateGameEvent;
+
+/**
+ * Digests.java collects stream notifications for guilds that have digests
+ * turned on, and sends them as one message per guild on a schedule
+ * instead of one message per stream. Streams that end before the digest
+ * is sent are left out of it. Each guild sends its digest at its own
+ * offset within the digest interval, so that digests of many guilds are
+ * spread out rather than sent all at once.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class Digests {
+	/**
+	 * The number of milliseconds in a minute.
+	 */
+	private static final long MINUTE_MILLIS = 60 * 1000;
+
+	/**
+	 * A map of the ID of each guild with streams waiting to be sent.
+	 */
+	private final Map<Long, GuildDigest> myDigests;
+
+	/**
+	 * The wheel that sends each digest when it is due.
+	 */
+	private final TimingWheel myWheel;
+
+	/**
+	 * The model that stores system preferences information.
+	 */
+	private final Preferences myPreferences;
+
+	/**
+	 * The constructor of Digests.
+	 *
+	 * @param theWheel is the wheel that sends each digest when it is due.
+	 * @param thePref is model that stores the system preferences.
+	 */
+	public Digests(final TimingWheel theWheel, final Preferences thePref) {
+		myDigests = new ConcurrentHashMap<Long, GuildDigest>();
+		myWheel = theWheel;
+		myPreferences = thePref;
+	}
+
+	/**
+	 * Adds the stream that theEvent started to the next digest of its
+	 * guild, scheduling the digest if it is the first stream in it.
+	 *
+	 * @param theEvent is an event where a user has started streaming.
+	 * @param theMinutes is the time in minutes between digests of the
+	 * guild.
+	 * @throws IllegalArgumentException if theMinutes is not positive.
+	 */
+	public void streamStarted(final UserUpdateGameEvent theEvent,
+							  final int theMinutes) {
+		if (theMinutes <= 0) {
+			throw new IllegalArgumentException("The time between digests "
+											   + "must be positive.");
+		}
+
+		final Guild guild = theEvent.getGuild();
+		final Game game = theEvent.getNewGame();
+		final Stream stream = new Stream(theEvent.getEntity().getName(),
+										 game.getName(), game.getUrl());
+
+		myDigests.compute(guild.getIdLong(), (theID, theDigest) -> {
+			GuildDigest digest = theDigest;
+			if (digest == null) {
+				digest = new GuildDigest(guild.getJDA());
+				myWheel.schedule(() -> send(theID),
+								 delay(theID, theMinutes * MINUTE_MILLIS));
+			}
+			digest.myStreams.put(theEvent.getEntity().getIdLong(), stream);
+			return digest;
+		});
+	}
+
+	/**
+	 * Removes the stream of the user of theEvent from the next digest of
+	 * its guild, if it has not been sent yet.
+	 *
+	 * @param theEvent is an event where a user has stopped streaming.
+	 */
+	public void streamEnded(final UserUpdateGameEvent theEvent) {
+		myDigests.computeIfPresent(theEvent.getGuild().getIdLong(),
+				(theID, theDigest) -> {
+					theDigest.myStreams.remove(
+							theEvent.getEntity().getIdLong());
+					return theDigest;
+				});
+	}
+
+	/**
+	 * Sends the digest of the guild with the ID theGuildID. Streams started
+	 * after this begins go into the next digest.
+	 *
+	 * @param theGuildID is the ID of the guild.
+	 */
+	private void send(final long theGuildID) {
+		final GuildDigest digest = myDigests.remove(theGuildID);
+		final Guild guild = digest.myJDA.getGuildById(theGuildID);
+
+		// Nothing is sent if every stream ended or Stream Bot left.
+		if (guild != null && !digest.myStreams.isEmpty()) {
+			Notifications.sendDigest(guild, myPreferences,
+									 digest.myStreams.values());
+		}
+	}
+
+	/**
+	 * Returns the time in milliseconds until the next digest of the guild
+	 * with the ID theGuildID is due. Each guild is given a fixed offset
+	 * within theInterval based on its ID.
+	 *
+	 * @param theGuildID is the ID of the guild.
+	 * @param theInterval is the time in milliseconds between digests.
+	 * @return the time in milliseconds until the next digest.
+	 */
+	private static long delay(final long theGuildID, final long theInterval) {
+		final long offset = Math.floorMod(Long.hashCode(theGuildID)
+										  * 0x9E3779B9L, theInterval);
+		final long now = System.currentTimeMillis();
+		return theInterval - Math.floorMod(now - offset, theInterval);
+	}
+
+	/**
+	 * Stream.java is a stream waiting to be sent in a digest.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	public static final class Stream {
+		/**
+		 * The name of the user that is streaming.
+		 */
+		private final String myUser;
+
+		/**
+		 * The name of the game being streamed.
+		 */
+		private final String myGame;
+
+		/**
+		 * The URL of the stream, or null.
+		 */
+		private final String myURL;
+
+		/**
+		 * The constructor of a Stream.
+		 *
+		 * @param theUser is the name of the user that is streaming.
+		 * @param theGame is the name of the game being streamed.
+		 * @param theURL is the URL of the stream, or null.
+		 */
+		Stream(final String theUser, final String theGame,
+			   final String theURL) {
+			myUser = theUser;
+			myGame = theGame;
+			myURL = theURL;
+		}
+
+		/**
+		 * Returns the name of the user that is streaming.
+		 *
+		 * @return the name of the user that is streaming.
+		 */
+		public String getUser() {
+			return myUser;
+		}
+
+		/**
+		 * Returns the name of the game being streamed.
+		 *
+		 * @return the name of the game being streamed.
+		 */
+		public String getGame() {
+			return myGame;
+		}
+
+		/**
+		 * Returns the URL of the stream, or null if there is none.
+		 *
+		 * @return the URL of the stream, or null.
+		 */
+		public String getURL() {
+			return myURL;
+		}
+	}
+
+	/**
+	 * GuildDigest.java is the streams waiting to be sent to one guild, in
+	 * the order they started, keyed by the ID of the streaming user. It is
+	 * only changed inside the compute methods of myDigests, which lock the
+	 * entry of the guild.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private static final class GuildDigest {
+		/**
+		 * The JDA used to find the guild when the digest is sent.
+		 */
+		private final JDA myJDA;
+
+		/**
+		 * The streams waiting to be sent, keyed by user ID.
+		 */
+		private final Map<Long, Stream> myStreams;
+
+		/**
+		 * The constructor of a GuildDigest.
+		 *
+		 * @param theJDA is the JDA of the guild.
+		 */
+		GuildDigest(final JDA theJDA) {
+			myJDA = theJDA;
+			myStreams = new LinkedHashMap<Long, Stream>(4);
+		}
+	}
+}
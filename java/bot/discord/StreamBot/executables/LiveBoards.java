@@ -0,0 +1,279 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.executables;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bot.discord.StreamBot.system.Preferences;
+import bot.discord.StreamBot.system.TimingWheel;
+import bot.discord.StreamBot.util.Configuration;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Game;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.events.user.update.UserUpdateGameEvent;
+
+/**
+ * LiveBoards.java keeps a live board for guilds that have one turned on:
+ * a single pinned message in the default channel listing everyone
+ * streaming, edited in place instead of sending a notification for each
+ * stream. Changes are collected so that a board is edited at most once
+ * per board interval, and an edit is skipped if the board would look the
+ * same as it already does. An edit that fails or is refused is tried
+ * again, waiting twice as long after each failure in a row. Boards are
+ * filled with the members already streaming when they are turned on and
+ * whenever a shard is ready, since only changes arrive as events.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class LiveBoards {
+	/**
+	 * The most times the board interval is doubled after failed edits.
+	 */
+	private static final int MAX_BACKOFF = 5;
+
+	/**
+	 * A map of the ID of each guild with the state of its board.
+	 */
+	private final Map<Long, Board> myBoards;
+
+	/**
+	 * The wheel that edits each board when it is due.
+	 */
+	private final TimingWheel myWheel;
+
+	/**
+	 * The model that stores system preferences information.
+	 */
+	private final Preferences myPreferences;
+
+	/**
+	 * The constructor of LiveBoards.
+	 *
+	 * @param theWheel is the wheel that edits each board when it is due.
+	 * @param thePref is model that stores the system preferences.
+	 */
+	public LiveBoards(final TimingWheel theWheel, final Preferences thePref) {
+		myBoards = new ConcurrentHashMap<Long, Board>();
+		myWheel = theWheel;
+		myPreferences = thePref;
+	}
+
+	/**
+	 * Adds the stream that theEvent started to the board of its guild.
+	 *
+	 * @param theEvent is an event where a user has started streaming.
+	 */
+	public void streamStarted(final UserUpdateGameEvent theEvent) {
+		final Guild guild = theEvent.getGuild();
+		final Game game = theEvent.getNewGame();
+		final Board board = myBoards.computeIfAbsent(guild.getIdLong(),
+				theID -> new Board(guild.getJDA()));
+
+		synchronized (board) {
+			board.myStreams.put(theEvent.getEntity().getIdLong(),
+					new Digests.Stream(theEvent.getEntity().getName(),
+									   game.getName(), game.getUrl()));
+			schedule(guild.getIdLong(), board);
+		}
+	}
+
+	/**
+	 * Fills the board of theGuild with the members streaming now, in
+	 * place of the streams it had, and schedules an edit. Call this
+	 * function when the board is turned on or the shard of theGuild is
+	 * ready, as streams that started before then have no event.
+	 *
+	 * @param theGuild is the guild that has a live board.
+	 */
+	public void fill(final Guild theGuild) {
+		final Board board = myBoards.computeIfAbsent(theGuild.getIdLong(),
+				theID -> new Board(theGuild.getJDA()));
+
+		synchronized (board) {
+			board.myStreams.clear();
+			for (final Member member: theGuild.getMembers()) {
+				final Game game = member.getGame();
+				if (game != null && game.getType() == Game.GameType.STREAMING) {
+					board.myStreams.put(member.getUser().getIdLong(),
+							new Digests.Stream(member.getUser().getName(),
+											   game.getName(), game.getUrl()));
+				}
+			}
+			schedule(theGuild.getIdLong(), board);
+		}
+	}
+
+	/**
+	 * Fills the board of every guild of theJDA that has one turned on.
+	 *
+	 * @param theJDA is the JDA of the shard that is ready.
+	 */
+	public void fillAll(final JDA theJDA) {
+		for (final Guild guild: theJDA.getGuilds()) {
+			if (guild.isAvailable() && myPreferences.hasBoard(guild.getName())) {
+				fill(guild);
+			}
+		}
+	}
+
+	/**
+	 * Removes the stream of the user of theEvent from the board of its
+	 * guild, if it is on it.
+	 *
+	 * @param theEvent is an event where a user has stopped streaming.
+	 */
+	public void streamEnded(final UserUpdateGameEvent theEvent) {
+		final long guildID = theEvent.getGuild().getIdLong();
+		final Board board = myBoards.get(guildID);
+
+		if (board != null) {
+			synchronized (board) {
+				if (board.myStreams.remove(
+						theEvent.getEntity().getIdLong()) != null) {
+					schedule(guildID, board);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Schedules the next edit of theBoard, unless one is already waiting.
+	 * The edit is made as soon as the board interval has passed since the
+	 * last one, doubled for each edit in a row that failed. Must be called
+	 * while holding the lock of theBoard.
+	 *
+	 * @param theGuildID is the ID of the guild of theBoard.
+	 * @param theBoard is the board that changed.
+	 */
+	private void schedule(final long theGuildID, final Board theBoard) {
+		if (!theBoard.myScheduled) {
+			theBoard.myScheduled = true;
+			final long due = theBoard.myLastEdit
+					+ (Configuration.get().getBoardIntervalMillis()
+					   << Math.min(theBoard.myFailures, MAX_BACKOFF));
+			myWheel.schedule(() -> edit(theGuildID), Math.max(0,
+							 due - System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Edits the board of the guild with the ID theGuildID to show the
+	 * streams on it now, unless it already shows them. The board is
+	 * forgotten if the guild turned it off or Stream Bot left the guild.
+	 *
+	 * @param theGuildID is the ID of the guild.
+	 */
+	private void edit(final long theGuildID) {
+		final Board board = myBoards.get(theGuildID);
+		Guild guild = null;
+		String text = null;
+
+		// The board was removed after this edit was scheduled.
+		if (board == null) {
+			return;
+		}
+
+		synchronized (board) {
+			board.myScheduled = false;
+			guild = board.myJDA.getGuildById(theGuildID);
+
+			if (guild == null || !myPreferences.hasBoard(guild.getName())) {
+				myBoards.remove(theGuildID);
+			} else {
+				final String rendered = Notifications.renderBoard(
+						board.myStreams.values());
+				// Skips the edit if nothing visible changed.
+				if (!rendered.equals(board.myText)) {
+					board.myLastEdit = System.currentTimeMillis();
+					text = rendered;
+				}
+			}
+		}
+
+		if (text != null) {
+			final String sent = text;
+			Notifications.sendBoard(guild, myPreferences, sent,
+					theSent -> done(theGuildID, board, sent, theSent));
+		}
+	}
+
+	/**
+	 * Records whether the edit of theBoard to theText went through. The
+	 * board remembers theText once Discord shows it, otherwise the edit is
+	 * scheduled again after a longer wait.
+	 *
+	 * @param theGuildID is the ID of the guild of theBoard.
+	 * @param theBoard is the board that was edited.
+	 * @param theText is the text the board was edited to.
+	 * @param theSent is whether the edit went through.
+	 */
+	private void done(final long theGuildID, final Board theBoard,
+					  final String theText, final boolean theSent) {
+		synchronized (theBoard) {
+			if (theSent) {
+				theBoard.myText = theText;
+				theBoard.myFailures = 0;
+			} else {
+				theBoard.myFailures++;
+				schedule(theGuildID, theBoard);
+			}
+		}
+	}
+
+	/**
+	 * Board.java is the state of the live board of one guild. It is only
+	 * read or changed while holding its lock.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private static final class Board {
+		/**
+		 * The JDA used to find the guild when the board is edited.
+		 */
+		private final JDA myJDA;
+
+		/**
+		 * The streams on the board, in the order they started, keyed by
+		 * user ID.
+		 */
+		private final Map<Long, Digests.Stream> myStreams;
+
+		/**
+		 * The text Discord confirmed the board shows, or null.
+		 */
+		private String myText;
+
+		/**
+		 * The time in milliseconds of the last edit.
+		 */
+		private long myLastEdit;
+
+		/**
+		 * The number of edits in a row that failed or were refused.
+		 */
+		private int myFailures;
+
+		/**
+		 * Whether an edit is waiting on the wheel.
+		 */
+		private boolean myScheduled;
+
+		/**
+		 * The constructor of a Board.
+		 *
+		 * @param theJDA is the JDA of the guild.
+		 */
+		Board(final JDA theJDA) {
+			myJDA = theJDA;
+			myStreams = new LinkedHashMap<Long, Digests.Stream>(4);
+		}
+	}
+}
@@ -6,13 +6,23 @@
 package bot.discord.StreamBot.executables;
 
 import java.io.SyncFailedException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import bot.discord.StreamBot.profiling.SendEvent;
+import bot.discord.StreamBot.system.CircuitBreaker;
 import bot.discord.StreamBot.system.Preferences;
+import bot.discord.StreamBot.util.Configuration;
 import bot.discord.StreamBot.util.References;
 import net.dv8tion.jda.core.entities.Game;
 import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.TextChannel;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.core.events.user.update.UserUpdateGameEvent;
+import net.dv8tion.jda.core.exceptions.ErrorResponseException;
+import net.dv8tion.jda.core.requests.ErrorResponse;
 
 /**
  * Notifications.java holds functions for sending notifications and
@@ -22,16 +32,53 @@ import net.dv8tion.jda.core.events.user.update.UserUpdateGameEvent;
  * @version 1.0
  */
 public final class Notifications {
+	/**
+	 * The prefix of circuit breaker keys for guilds.
+	 */
+	public static final String GUILD_KEY = "guild:";
+	
+	/**
+	 * The prefix of circuit breaker keys for text channels.
+	 */
+	public static final String CHANNEL_KEY = "channel:";
+	
+	/**
+	 * The length that lists of streams are kept under, leaving room in a
+	 * message for the line counting the streams that were left out.
+	 */
+	private static final int LIST_LIMIT = Message.MAX_CONTENT_LENGTH - 32;
+	
+	/**
+	 * The text a live board is edited to when it is turned off.
+	 */
+	private static final String CLOSED_BOARD = "**LIVE NOW:**\n"
+			+ "The live board has been turned off.";
+	
+	/**
+	 * The circuit breaker that guards messages sent to each guild and
+	 * each of their channels.
+	 */
+	private static final CircuitBreaker BREAKER = new CircuitBreaker(
+			References.BREAKER_FAILURE_THRESHOLD,
+			References.BREAKER_OPEN_MILLIS);
+	
+	static {
+		// Applies changes to the breaker settings as they are made.
+		Configuration.addListener(theConfiguration -> BREAKER.setLimits(
+				theConfiguration.getBreakerThreshold(),
+				theConfiguration.getBreakerOpenMillis()));
+	}
+	
 	/**
 	 * Informs all users of this guild that Stream Bot has failed to save
-	 * changes. Should be called a SyncFailedException is caught.
+	 * changes. Should be called a SyncFailedException is caught. The
+	 * message is sent to the system channel, as the default channel may
+	 * be the reason the save was attempted.
 	 * 
 	 * @param theGuild is the guild that changed system preferences but
 	 * failed to save those changes.
-	 * @param thePref is model that stores the system preferences.
 	 */
-	public static void failedSave(final Guild theGuild,
-			                      final Preferences thePref) {
+	public static void failedSave(final Guild theGuild) {
 		// Builds the message.
 		final StringBuilder builder = new StringBuilder();
 		builder.append("An error has occurred when attempting to save ");
@@ -43,8 +90,18 @@ public final class Notifications {
 		builder.append("remove Stream Bot and attempt to add Stream Bot ");
 		builder.append("again.");
 		
-		// Sends the messages to the default channel.
-		sendMessageToDefaultChannel(theGuild, thePref, builder.toString());
+		// Sends the messages to the system channel.
+		sendMessage(theGuild, null, builder.toString());
+	}
+	
+	/**
+	 * Returns the circuit breaker that guards messages sent to the
+	 * channels of each guild.
+	 * 
+	 * @return the circuit breaker for outgoing messages.
+	 */
+	public static CircuitBreaker getCircuitBreaker() {
+		return BREAKER;
 	}
 	
 	/**
@@ -54,24 +111,69 @@ public final class Notifications {
 	 * @param theEvent is the event the message "> help" is sent.
 	 */
 	public static void sendHelp(final MessageReceivedEvent theEvent) {
+		final String prefix = Configuration.get().getCommandPrefix();
+		
 		// Builds the message.
 		final StringBuilder builder = new StringBuilder();
 		builder.append("**COMMANDS:**\n\n");
 		builder.append("`");
-		builder.append(References.COMMAND_PREFIX);
+		builder.append(prefix);
 		builder.append("ping`\n");
 		builder.append("This command pings Stream Bot. ");
 		builder.append("StreamBot will respond with \"Hello @{username}\". ");
 		builder.append("Use this to test connection to SteamBot.\n");
 		builder.append("`");
-		builder.append(References.COMMAND_PREFIX);
+		builder.append(prefix);
 		builder.append("set_default_channel`\n");
 		builder.append("The channel this command is used in will become ");
 		builder.append("the default channel. ");
 		builder.append("The default channel is the channel used for ");
 		builder.append("messages unprovoked by commands. ");
 		builder.append("You must have permission to \"Manage Channels\" to ");
-		builder.append("use this command.");
+		builder.append("use this command.\n");
+		builder.append("`");
+		builder.append(prefix);
+		builder.append("set_digest {minutes|off}`\n");
+		builder.append("Instead of a notification for every stream, ");
+		builder.append("Stream Bot will send one message listing the ");
+		builder.append("streams started every {minutes} minutes. ");
+		builder.append("Use `off` to send a notification for every ");
+		builder.append("stream again. ");
+		builder.append("You must have permission to \"Manage Channels\" to ");
+		builder.append("use this command.\n");
+		builder.append("`");
+		builder.append(prefix);
+		builder.append("set_board {on|off}`\n");
+		builder.append("Instead of a notification for every stream, ");
+		builder.append("Stream Bot will keep one pinned message in the ");
+		builder.append("default channel listing everyone streaming. ");
+		builder.append("Use `off` to send a notification for every ");
+		builder.append("stream again. ");
+		builder.append("You must have permission to \"Manage Channels\" to ");
+		builder.append("use this command.\n");
+		builder.append("`");
+		builder.append(prefix);
+		builder.append("breakers`\n");
+		builder.append("Shows whether Stream Bot has stopped sending ");
+		builder.append("messages to this server or any of its channels ");
+		builder.append("after repeated failures. ");
+		builder.append("Only the operator of Stream Bot can use this ");
+		builder.append("command.\n");
+		builder.append("`");
+		builder.append(prefix);
+		builder.append("throttles`\n");
+		builder.append("Shows how many commands Stream Bot has ignored ");
+		builder.append("because they were used too often. ");
+		builder.append("Only the operator of Stream Bot can use this ");
+		builder.append("command.\n");
+		builder.append("`");
+		builder.append(prefix);
+		builder.append("profile_dump`\n");
+		builder.append("Saves the last minutes of Stream Bot's flight ");
+		builder.append("recording to a file on the server it runs on, ");
+		builder.append("for finding out why it is slow. ");
+		builder.append("Only the operator of Stream Bot can use this ");
+		builder.append("command.");
 		
 		// Sends the message to the channel that the command was used in.
 		theEvent.getChannel().sendMessage(builder.toString()).queue();
@@ -85,11 +187,13 @@ public final class Notifications {
 	 */
 	public static void sendIntroduction(final Guild theGuild,
 										final Preferences thePref) {
+		final String prefix = Configuration.get().getCommandPrefix();
+		
 		// Builds the message.
 		final StringBuilder builder = new StringBuilder();
 		builder.append("Thank you for adding StreamBot to your server. ");
 		builder.append("\nThe command prefix for Stream Bot is `");
-		builder.append(References.COMMAND_PREFIX);
+		builder.append(prefix);
 		builder.append("`. ");
 		builder.append("Stream Bot is a bot designed for streamers. ");
 		builder.append("If a user has connected their streaming service,");
@@ -98,7 +202,7 @@ public final class Notifications {
 		builder.append("server informing other users when that user ");
 		builder.append("starts streaming. ");
 		builder.append("For a list of commands, use `");
-		builder.append(References.COMMAND_PREFIX);
+		builder.append(prefix);
 		builder.append("help`.");
 		
 		// Sends the messages to the default channel.
@@ -116,6 +220,35 @@ public final class Notifications {
 	 */
 	public static void sendNotificationStream(final UserUpdateGameEvent theEvent,
 											  final Preferences thePref) {
+		sendNotificationStream(theEvent, thePref,
+							   renderNotificationStream(theEvent));
+	}
+	
+	/**
+	 * Sends theMessage, built by renderNotificationStream, in the default
+	 * channel of the server of theEvent.
+	 * 
+	 * @param theEvent is an event where a user has started streaming.
+	 * @param thePref is model that stores the system preferences.
+	 * @param theMessage is the notification message.
+	 */
+	public static void sendNotificationStream(final UserUpdateGameEvent theEvent,
+											  final Preferences thePref,
+											  final String theMessage) {
+		// Sends the messages to the default channel.
+		sendMessageToDefaultChannel(theEvent.getGuild(), thePref,
+				                    theMessage);
+	}
+	
+	/**
+	 * Builds the notification message informing all other users that the
+	 * user that triggered this event has begun streaming along with the
+	 * URL to their streaming service.
+	 * 
+	 * @param theEvent is an event where a user has started streaming.
+	 * @return the notification message.
+	 */
+	public static String renderNotificationStream(final UserUpdateGameEvent theEvent) {
 		final Game game = theEvent.getNewGame();
 		
 		// Builds the message.
@@ -128,9 +261,149 @@ public final class Notifications {
 			builder.append(game.getUrl());
 		}
 		
+		return builder.toString();
+	}
+	
+	/**
+	 * Sends a single notification message in the default channel of the
+	 * server listing every user in theStreams that started streaming since
+	 * the last digest, along with the URLs to their streaming services.
+	 * 
+	 * @param theGuild is the guild the digest is being sent to.
+	 * @param thePref is model that stores the system preferences.
+	 * @param theStreams are the streams that started since the last
+	 * digest.
+	 */
+	public static void sendDigest(final Guild theGuild,
+								  final Preferences thePref,
+								  final Collection<Digests.Stream> theStreams) {
+		// Builds the message.
+		final StringBuilder builder = new StringBuilder();
+		builder.append("@everyone, ");
+		builder.append(theStreams.size() == 1 ? "1 user has"
+					   : theStreams.size() + " users have");
+		builder.append(" started streaming:\n");
+		appendStreams(builder, theStreams);
+		
 		// Sends the messages to the default channel.
-		sendMessageToDefaultChannel(theEvent.getGuild(), thePref,
-				                    builder.toString());
+		sendMessageToDefaultChannel(theGuild, thePref, builder.toString());
+	}
+	
+	/**
+	 * Builds the text of a live board listing every user in theStreams,
+	 * along with the URLs to their streaming services.
+	 * 
+	 * @param theStreams are the streams going on, in the order they
+	 * started.
+	 * @return the text of the board.
+	 */
+	public static String renderBoard(final Collection<Digests.Stream> theStreams) {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("**LIVE NOW:**\n");
+		if (theStreams.isEmpty()) {
+			builder.append("No one is streaming right now.");
+		}
+		appendStreams(builder, theStreams);
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Edits the live board message of theGuild to theText. If the guild
+	 * has no board message yet, or it has been deleted, a new one is sent
+	 * to the default channel, pinned, and saved in thePref. Nothing is
+	 * sent if the circuit breaker of theGuild or the channel is open.
+	 * theDone is told whether the board shows theText, so that a refused
+	 * or failed edit can be tried again.
+	 * 
+	 * @param theGuild is the guild the board belongs to.
+	 * @param thePref is model that stores the system preferences.
+	 * @param theText is the text of the board, built by renderBoard.
+	 * @param theDone is given whether the board was edited or sent.
+	 */
+	public static void sendBoard(final Guild theGuild,
+								 final Preferences thePref,
+								 final String theText,
+								 final Consumer<Boolean> theDone) {
+		final String guildKey = GUILD_KEY + theGuild.getId();
+		final String channelID = thePref.findDefaultChannel(theGuild.getName());
+		final String messageID = thePref.findBoardMessage(theGuild.getName());
+		
+		if (channelID == null || !BREAKER.allowRequest(guildKey)) {
+			theDone.accept(false);
+			return;
+		}
+		
+		final TextChannel channel = usableChannel(
+				theGuild.getTextChannelById(channelID));
+		if (channel == null) {
+			BREAKER.recordFailure(guildKey);
+			theDone.accept(false);
+			return;
+		}
+		
+		final String channelKey = CHANNEL_KEY + channel.getId();
+		if (messageID == null) {
+			sendBoardMessage(theGuild, thePref, channel, theText, theDone);
+		} else {
+			final SendEvent record = SendEvent.queued("board_edit",
+					theGuild.getIdLong());
+			channel.editMessageById(messageID, theText).queue(
+					theEdited -> {
+						BREAKER.recordSuccess(channelKey);
+						BREAKER.recordSuccess(guildKey);
+						record.completed(true);
+						theDone.accept(true);
+					},
+					theError -> {
+						record.completed(false);
+						if (isUnknownMessage(theError)) {
+							// The message was deleted or is in an old channel.
+							sendBoardMessage(theGuild, thePref, channel,
+											 theText, theDone);
+						} else {
+							// Keeps the message to edit it again later.
+							BREAKER.recordFailure(channelKey);
+							BREAKER.recordFailure(guildKey);
+							theDone.accept(false);
+						}
+					});
+		}
+	}
+	
+	/**
+	 * Edits the live board message with the ID theMessageID in the channel
+	 * with the ID theChannelID to say the board was turned off, and unpins
+	 * it. Call this function after the live board of theGuild is turned
+	 * off. Does nothing if either ID is null.
+	 * 
+	 * @param theGuild is the guild the board belonged to.
+	 * @param theChannelID is the ID of the default channel, or null.
+	 * @param theMessageID is the ID of the board message, or null.
+	 */
+	public static void closeBoard(final Guild theGuild,
+								  final String theChannelID,
+								  final String theMessageID) {
+		if (theChannelID == null || theMessageID == null) {
+			return;
+		}
+		
+		final TextChannel channel = usableChannel(
+				theGuild.getTextChannelById(theChannelID));
+		if (channel != null) {
+			final String channelKey = CHANNEL_KEY + channel.getId();
+			channel.editMessageById(theMessageID, CLOSED_BOARD).queue(
+					theEdited -> {
+						BREAKER.recordSuccess(channelKey);
+						theEdited.unpin().queue();
+					},
+					theError -> {
+						// A board that was deleted has nothing left to close.
+						if (!isUnknownMessage(theError)) {
+							BREAKER.recordFailure(channelKey);
+						}
+					});
+		}
 	}
 	
 	/**
@@ -144,6 +417,19 @@ public final class Notifications {
 				+ theEvent.getAuthor().getAsMention()).queue();
 	}
 	
+	/**
+	 * Warns the author of theEvent that they are using commands too
+	 * quickly and that their commands are being ignored. Call this
+	 * function at most once per rate limit period for each user.
+	 * 
+	 * @param theEvent is the event of the command that was ignored.
+	 */
+	public static void sendThrottled(final MessageReceivedEvent theEvent) {
+		theEvent.getChannel().sendMessage(theEvent.getAuthor().getAsMention()
+				+ " You are using commands too quickly. Your commands "
+				+ "will be ignored for a while.").queue();
+	}
+	
 	/**
 	 * Send the desired message, theMessage, to the default channel of
 	 * theGuild.
@@ -155,29 +441,197 @@ public final class Notifications {
 	private static void sendMessageToDefaultChannel(final Guild theGuild,
 			                                        final Preferences thePref,
 			                                        final String theMessage) {
-		try {
-			// Try sending the message to the default channel of the guild.
-			theGuild.getTextChannelById(thePref.getDefaultChannel(
-					                    theGuild.getName())).sendMessage(
-					                    theMessage).queue();
-		} catch (final IllegalArgumentException ex) {
-			/* If an IllegalArgumentException is thrown then it means
-			   there wasn't an entry for this guild. Attempt to add an
-			   entry for this guild with default values. */
+		// Adds an entry for this guild with default values if there is none.
+		String channelID = thePref.findDefaultChannel(theGuild.getName());
+		if (channelID == null && theGuild.getSystemChannel() != null) {
+			channelID = theGuild.getSystemChannel().getId();
 			try {
-				thePref.addGuild(theGuild.getName(),
-		                  		 theGuild.getSystemChannel().getId());
-				theGuild.getTextChannelById(thePref.getDefaultChannel(
-		                 					theGuild.getName())).sendMessage(
-		                 					theMessage).queue();
-			} catch (final SyncFailedException ex2) {
-				Notifications.failedSave(theGuild, thePref);
-			} catch (final IllegalArgumentException ex2 ) {
-				/* This shouldn't happen as the system preferences was set
-				   in response to the first IllegalArgumentException
-				   thrown. */
-				ex2.printStackTrace();
+				thePref.addGuild(theGuild.getName(), channelID);
+			} catch (final SyncFailedException ex) {
+				Notifications.failedSave(theGuild);
 			}
 		}
+		
+		sendMessage(theGuild, channelID, theMessage);
+	}
+	
+	/**
+	 * Sends theMessage to the channel of theGuild with the ID theChannelID.
+	 * If that channel no longer exists, Stream Bot can not talk in it or
+	 * its circuit breaker is open, the message is sent to the system
+	 * channel instead, and if that fails as well it is sent to the owner of
+	 * theGuild as a direct message. Nothing is sent if the circuit breaker
+	 * of theGuild is open.
+	 * 
+	 * @param theGuild is the guild the message is being sent to.
+	 * @param theChannelID is the ID of the preferred channel, or null.
+	 * @param theMessage is the message being sent.
+	 */
+	private static void sendMessage(final Guild theGuild,
+									final String theChannelID,
+									final String theMessage) {
+		final String guildKey = GUILD_KEY + theGuild.getId();
+		
+		// Drops the message if this guild has been failing repeatedly.
+		if (!BREAKER.allowRequest(guildKey)) {
+			return;
+		}
+		
+		TextChannel channel = null;
+		if (theChannelID != null) {
+			channel = usableChannel(theGuild.getTextChannelById(theChannelID));
+		}
+		if (channel == null) {
+			channel = usableChannel(theGuild.getSystemChannel());
+		}
+		
+		if (channel != null) {
+			final String channelKey = CHANNEL_KEY + channel.getId();
+			final SendEvent record = SendEvent.queued("message",
+					theGuild.getIdLong());
+			channel.sendMessage(theMessage).queue(
+					theSent -> {
+						BREAKER.recordSuccess(channelKey);
+						BREAKER.recordSuccess(guildKey);
+						record.completed(true);
+					},
+					theError -> {
+						BREAKER.recordFailure(channelKey);
+						BREAKER.recordFailure(guildKey);
+						record.completed(false);
+					});
+		} else if (theGuild.getOwner() != null) {
+			// As a last resort, message the owner of the guild directly.
+			final SendEvent record = SendEvent.queued("owner_message",
+					theGuild.getIdLong());
+			theGuild.getOwner().getUser().openPrivateChannel().queue(
+					thePrivate -> thePrivate.sendMessage(theMessage).queue(
+							theSent -> {
+								BREAKER.recordSuccess(guildKey);
+								record.completed(true);
+							},
+							theError -> {
+								BREAKER.recordFailure(guildKey);
+								record.completed(false);
+							}),
+					theError -> {
+						BREAKER.recordFailure(guildKey);
+						record.completed(false);
+					});
+		} else {
+			BREAKER.recordFailure(guildKey);
+		}
+	}
+	
+	/**
+	 * Sends theText to theChannel as a new live board message, pins it and
+	 * saves its ID in thePref. The ID is saved off the thread of the JDA
+	 * callback, as saving locks and writes the file, and theDone is told
+	 * once it is saved.
+	 * 
+	 * @param theGuild is the guild the board belongs to.
+	 * @param thePref is model that stores the system preferences.
+	 * @param theChannel is the default channel of theGuild.
+	 * @param theText is the text of the board.
+	 * @param theDone is given whether the board was sent.
+	 */
+	private static void sendBoardMessage(final Guild theGuild,
+										 final Preferences thePref,
+										 final TextChannel theChannel,
+										 final String theText,
+										 final Consumer<Boolean> theDone) {
+		final String guildKey = GUILD_KEY + theGuild.getId();
+		final String channelKey = CHANNEL_KEY + theChannel.getId();
+		
+		final SendEvent record = SendEvent.queued("board_message",
+				theGuild.getIdLong());
+		theChannel.sendMessage(theText).queue(
+				theSent -> {
+					BREAKER.recordSuccess(channelKey);
+					BREAKER.recordSuccess(guildKey);
+					record.completed(true);
+					theSent.pin().queue();
+					CompletableFuture.runAsync(() -> {
+						try {
+							thePref.setBoardMessage(theGuild.getName(),
+													theSent.getId());
+						} catch (final SyncFailedException ex) {
+							Notifications.failedSave(theGuild);
+						}
+						theDone.accept(true);
+					});
+				},
+				theError -> {
+					BREAKER.recordFailure(channelKey);
+					BREAKER.recordFailure(guildKey);
+					record.completed(false);
+					theDone.accept(false);
+				});
+	}
+	
+	/**
+	 * Appends a line for each user in theStreams to theBuilder, along with
+	 * the URLs to their streaming services. Lines that would take the
+	 * message past LIST_LIMIT are left out and counted in a last line.
+	 * 
+	 * @param theBuilder is the message being built.
+	 * @param theStreams are the streams to list.
+	 */
+	private static void appendStreams(final StringBuilder theBuilder,
+									  final Collection<Digests.Stream> theStreams) {
+		int left = theStreams.size();
+		for (final Digests.Stream stream: theStreams) {
+			final StringBuilder line = new StringBuilder();
+			line.append("\u2022 ");
+			line.append(stream.getUser());
+			line.append(" is streaming " + stream.getGame() + ".");
+			// Checks to see if the user has an associated URL.
+			if (stream.getURL() != null) {
+				line.append(" <");
+				line.append(stream.getURL());
+				line.append(">");
+			}
+			line.append("\n");
+			
+			if (theBuilder.length() + line.length() > LIST_LIMIT) {
+				theBuilder.append("\u2026and " + left + " more");
+				break;
+			}
+			theBuilder.append(line);
+			left--;
+		}
+	}
+	
+	/**
+	 * Returns true if theError says the message being edited no longer
+	 * exists.
+	 * 
+	 * @param theError is the reason a request failed.
+	 * @return whether the message is unknown to Discord.
+	 */
+	private static boolean isUnknownMessage(final Throwable theError) {
+		return theError instanceof ErrorResponseException
+			   && ((ErrorResponseException) theError).getErrorResponse()
+				  == ErrorResponse.UNKNOWN_MESSAGE;
+	}
+	
+	/**
+	 * Returns theChannel if Stream Bot can talk in it and its circuit
+	 * breaker allows a request, otherwise returns null. A channel returned
+	 * by this method must be sent a message so that the outcome is
+	 * recorded.
+	 * 
+	 * @param theChannel is the channel being checked, may be null.
+	 * @return theChannel if a message may be sent to it, otherwise null.
+	 */
+	private static TextChannel usableChannel(final TextChannel theChannel) {
+		TextChannel result = null;
+		
+		if (theChannel != null && theChannel.canTalk()
+			&& BREAKER.allowRequest(CHANNEL_KEY + theChannel.getId())) {
+			result = theChannel;
+		}
+		
+		return result;
 	}
 }
@@ -5,60 +5,51 @@
 
 package bot.discord.StreamBot.listeners;
 
-import java.io.SyncFailedException;
-
-import bot.discord.StreamBot.executables.Notifications;
-import bot.discord.StreamBot.system.Preferences;
-import net.dv8tion.jda.core.entities.Guild;
+import bot.discord.StreamBot.pipeline.EventPipeline;
 import net.dv8tion.jda.core.events.guild.GuildJoinEvent;
 import net.dv8tion.jda.core.hooks.ListenerAdapter;
 
 /**
  * GuildJoinListener.java is a listener for whenever StreamBot joins a
- * server. This will initialize the system preferences for the new guild
- * and sends an introductory message to inform the members of this new
- * guild of how to use StreamBot.
+ * server. The event pipeline will initialize the system preferences for
+ * the new guild and sends an introductory message to inform the members
+ * of this new guild of how to use StreamBot.
  *  
  * @author Tucker Stewart
  * @version 1.0
  */
 public final class GuildJoinListener extends ListenerAdapter {
 	/**
-	 * The model that stores system preferences information.
+	 * The pipeline events are passed on to.
 	 */
-	private final Preferences myPreferences;
+	private final EventPipeline myPipeline;
 	
 	/**
 	 * The default constructor for this listener. Saves a reference to
-	 * Stream Bot's system preferences model for further access.
+	 * the pipeline that handles the events.
 	 * 
-	 * @param thePref is model that stores the system preferences.
+	 * @param thePipeline is the pipeline events are passed on to.
 	 */
-	public GuildJoinListener(final Preferences thePref) {
+	public GuildJoinListener(final EventPipeline thePipeline) {
 		super();
-		myPreferences = thePref;
+		myPipeline = thePipeline;
 	}
 	
 	/**
-	 * When Stream Bot joins the server, it will initialize the system
-	 * preferences with default values and send an introductory message.
+	 * When Stream Bot joins the server, the event is copied into the
+	 * pipeline to initialize the system preferences with default values
+	 * and send an introductory message.
 	 * 
 	 * @param theEvent is the event Stream Bot joins the server.
 	 */
 	@Override
 	public void onGuildJoin(final GuildJoinEvent theEvent) {
-		Guild guild = theEvent.getGuild();
-		
-		/* Adds the entry to myPrefences, if it failed to save the
-		   information then it will send a message to the guild, informing
-		   them that an error has occurred. */
+		// Rare enough to wait for a slot rather than lose the event.
+		final long sequence = myPipeline.claim();
 		try {
-			myPreferences.addGuild(guild.getName(),
-								   guild.getSystemChannel().getId());
-		} catch (final SyncFailedException ex) {
-			Notifications.failedSave(guild, myPreferences);
+			myPipeline.get(sequence).setGuildJoin(theEvent);
+		} finally {
+			myPipeline.publish(sequence);
 		}
-		
-		Notifications.sendIntroduction(theEvent.getGuild(), myPreferences);
 	}
 }
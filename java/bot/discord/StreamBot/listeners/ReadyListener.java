@@ -0,0 +1,54 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.listeners;
+
+import bot.discord.StreamBot.pipeline.EventPipeline;
+import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+
+/**
+ * ReadyListener.java is a listener for when a shard of StreamBot has
+ * finished connecting. The event pipeline will add system preferences for
+ * guilds joined while Stream Bot was offline and remove those of guilds
+ * it has left.
+ *  
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class ReadyListener extends ListenerAdapter {
+	/**
+	 * The pipeline events are passed on to.
+	 */
+	private final EventPipeline myPipeline;
+	
+	/**
+	 * The default constructor for this listener. Saves a reference to
+	 * the pipeline that handles the events.
+	 * 
+	 * @param thePipeline is the pipeline events are passed on to.
+	 */
+	public ReadyListener(final EventPipeline thePipeline) {
+		super();
+		myPipeline = thePipeline;
+	}
+	
+	/**
+	 * When a shard is ready, the event is copied into the pipeline to
+	 * bring the system preferences in line with its guilds.
+	 * 
+	 * @param theEvent is the event the shard is ready.
+	 */
+	@Override
+	public void onReady(final ReadyEvent theEvent) {
+		// Rare enough to wait for a slot rather than lose the event.
+		final long sequence = myPipeline.claim();
+		try {
+			myPipeline.get(sequence).setReady(theEvent);
+		} finally {
+			myPipeline.publish(sequence);
+		}
+	}
+}
@@ -5,49 +5,53 @@
 
 package bot.discord.StreamBot.listeners;
 
-import bot.discord.StreamBot.executables.Notifications;
-import bot.discord.StreamBot.system.Preferences;
-import net.dv8tion.jda.core.entities.Game.GameType;
+import bot.discord.StreamBot.pipeline.EventPipeline;
 import net.dv8tion.jda.core.events.user.update.UserUpdateGameEvent;
 import net.dv8tion.jda.core.hooks.ListenerAdapter;
 
 /**
  * StreamListener.java is a ListenerAdapter that watches for update events
- * and executes the corresponding function to notify user within a server
- * if a user has started streaming.
+ * and passes them to the event pipeline, which notifies users within a
+ * server if a user has started streaming.
  *  
  * @author Tucker Stewart
  * @version 1.0
  */
 public final class StreamListener extends ListenerAdapter {
 	/**
-	 * The model that stores system preferences information.
+	 * The pipeline events are passed on to.
 	 */
-	private final Preferences myPreferences;
+	private final EventPipeline myPipeline;
 	
 	/**
 	 * The default constructor for this listener. Saves a reference to
-	 * Stream Bot's system preferences model for further access.
+	 * the pipeline that handles the events.
 	 * 
-	 * @param thePref is model that stores the system preferences.
+	 * @param thePipeline is the pipeline events are passed on to.
 	 */
-	public StreamListener(final Preferences thePref) {
+	public StreamListener(final EventPipeline thePipeline) {
 		super();
-		myPreferences = thePref;
+		myPipeline = thePipeline;
 	}
 	
 	/**
-	 * Handles UserUpdateGameEvents. If the new game is being streamed,
-	 * then a notification is sent to inform that the user is streaming.
+	 * Handles UserUpdateGameEvents by copying them into the pipeline. The
+	 * pipeline sends a notification if the new game is being streamed, or
+	 * adds it to the next digest if the guild has digests turned on.
 	 * 
 	 * @param theEvent is the event of the user.
 	 */
 	@Override
 	public void onUserUpdateGame(final UserUpdateGameEvent theEvent) {
-		// Makes a notification if the user is streaming.
-		if (theEvent.getNewGame() != null
-			&& theEvent.getNewGame().getType().equals(GameType.STREAMING)) {
-			Notifications.sendNotificationStream(theEvent, myPreferences);
+		// Drops the event rather than stall the shard if the pipeline
+		// stays full.
+		final long sequence = myPipeline.tryClaim();
+		if (sequence >= 0) {
+			try {
+				myPipeline.get(sequence).setPresence(theEvent);
+			} finally {
+				myPipeline.publish(sequence);
+			}
 		}
 	}
 }
@@ -0,0 +1,345 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.pipeline;
+
+import net.dv8tion.jda.core.entities.Game;
+import net.dv8tion.jda.core.entities.Game.GameType;
+import net.dv8tion.jda.core.events.Event;
+import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.core.events.user.update.UserUpdateGameEvent;
+
+/**
+ * BotEvent.java is a reusable slot of the EventPipeline ring buffer. A
+ * listener copies the fields each stage needs out of a JDA event into a
+ * slot, and each stage then fills in its result, such as the route or
+ * the rendered message, for the stages after it. The JDA event itself is
+ * kept for the dispatch stage, which replies through it. Slots are
+ * allocated once and overwritten, so no garbage is made per event.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class BotEvent {
+	/**
+	 * The kinds of events that enter the pipeline.
+	 */
+	public enum Type {
+		/** A user's game changed. */
+		PRESENCE,
+		/** A message was sent. */
+		MESSAGE,
+		/** Stream Bot joined a guild. */
+		GUILD_JOIN,
+		/** A shard of Stream Bot finished connecting. */
+		READY
+	}
+
+	/**
+	 * What the dispatch stage should do with an event.
+	 */
+	public enum Route {
+		/** Nothing, the event was filtered out. */
+		DROP,
+		/** Send a stream notification now. */
+		NOTIFY,
+		/** Add a stream to the next digest. */
+		DIGEST,
+		/** Remove a stream from the next digest and the live board. */
+		STREAM_END,
+		/** Add a stream to the live board. */
+		BOARD,
+		/** Run a command. */
+		COMMAND,
+		/** Warn a user that their commands are being ignored. */
+		WARN,
+		/** Set up a guild that was just joined. */
+		JOIN,
+		/** Bring the system preferences in line with the guilds. */
+		RECONCILE
+	}
+
+	/**
+	 * The kind of this event.
+	 */
+	private Type myType;
+
+	/**
+	 * The ID of the guild of this event, or 0 for direct messages and
+	 * shards becoming ready.
+	 */
+	private long myGuildID;
+
+	/**
+	 * The ID of the user of this event, or 0 for guild joins.
+	 */
+	private long myUserID;
+
+	/**
+	 * Whether the user is streaming, or the author is a bot for messages.
+	 */
+	private boolean myFlag;
+
+	/**
+	 * Whether the user was streaming before this presence change.
+	 */
+	private boolean myWasStreaming;
+
+	/**
+	 * The URL of the stream, or the content of the message.
+	 */
+	private String myKey;
+
+	/**
+	 * The JDA event this slot was copied from.
+	 */
+	private Event myEvent;
+
+	/**
+	 * The time in nanoseconds this event was published.
+	 */
+	private long myPublished;
+
+	/**
+	 * The route chosen for this event.
+	 */
+	private Route myRoute;
+
+	/**
+	 * The message rendered for this event, or the name of its command.
+	 */
+	private String myText;
+
+	/**
+	 * The time in minutes between digests of the guild, when routed to its
+	 * digest.
+	 */
+	private int myDigestMinutes;
+
+	/**
+	 * Copies the fields of a game change into this slot.
+	 *
+	 * @param theEvent is the event of the user whose game changed.
+	 */
+	public void setPresence(final UserUpdateGameEvent theEvent) {
+		final Game game = theEvent.getNewGame();
+		set(Type.PRESENCE, theEvent.getGuild().getIdLong(),
+			theEvent.getEntity().getIdLong(), isStreaming(game),
+			isStreaming(theEvent.getOldGame()),
+			game == null ? null : game.getUrl(), theEvent);
+	}
+
+	/**
+	 * Copies the fields of a message into this slot.
+	 *
+	 * @param theEvent is the message event sent to a text channel.
+	 */
+	public void setMessage(final MessageReceivedEvent theEvent) {
+		set(Type.MESSAGE, theEvent.getGuild() == null ? 0
+			: theEvent.getGuild().getIdLong(),
+			theEvent.getAuthor().getIdLong(), theEvent.getAuthor().isBot(),
+			false, theEvent.getMessage().getContentRaw(), theEvent);
+	}
+
+	/**
+	 * Copies the fields of a guild join into this slot.
+	 *
+	 * @param theEvent is the event Stream Bot joins the server.
+	 */
+	public void setGuildJoin(final GuildJoinEvent theEvent) {
+		set(Type.GUILD_JOIN, theEvent.getGuild().getIdLong(), 0, false,
+			false, null, theEvent);
+	}
+
+	/**
+	 * Copies a shard finishing connecting into this slot.
+	 *
+	 * @param theEvent is the event the shard is ready.
+	 */
+	public void setReady(final ReadyEvent theEvent) {
+		set(Type.READY, 0, 0, false, false, null, theEvent);
+	}
+
+	/**
+	 * Overwrites every field of this slot.
+	 *
+	 * @param theType is the kind of event.
+	 * @param theGuildID is the ID of the guild.
+	 * @param theUserID is the ID of the user.
+	 * @param theFlag is whether the user is streaming, or whether the
+	 * author of a message is a bot.
+	 * @param theWasStreaming is whether the user was streaming.
+	 * @param theKey is the URL of the stream or content of the message.
+	 * @param theEvent is the JDA event, or null when benchmarking.
+	 */
+	public void set(final Type theType, final long theGuildID,
+					final long theUserID, final boolean theFlag,
+					final boolean theWasStreaming, final String theKey,
+					final Event theEvent) {
+		myType = theType;
+		myGuildID = theGuildID;
+		myUserID = theUserID;
+		myFlag = theFlag;
+		myWasStreaming = theWasStreaming;
+		myKey = theKey;
+		myEvent = theEvent;
+		myPublished = System.nanoTime();
+		myRoute = null;
+		myText = null;
+		myDigestMinutes = 0;
+	}
+
+	/**
+	 * Returns the kind of this event.
+	 *
+	 * @return the kind of this event.
+	 */
+	public Type getType() {
+		return myType;
+	}
+
+	/**
+	 * Returns the ID of the guild of this event, or 0 for direct messages.
+	 *
+	 * @return the ID of the guild.
+	 */
+	public long getGuildID() {
+		return myGuildID;
+	}
+
+	/**
+	 * Returns the ID of the user of this event.
+	 *
+	 * @return the ID of the user.
+	 */
+	public long getUserID() {
+		return myUserID;
+	}
+
+	/**
+	 * Returns whether the user is streaming, for presence changes.
+	 *
+	 * @return whether the user is streaming.
+	 */
+	public boolean isStreaming() {
+		return myType == Type.PRESENCE && myFlag;
+	}
+
+	/**
+	 * Returns whether the user was streaming, for presence changes.
+	 *
+	 * @return whether the user was streaming.
+	 */
+	public boolean wasStreaming() {
+		return myWasStreaming;
+	}
+
+	/**
+	 * Returns whether the author is a bot, for messages.
+	 *
+	 * @return whether the author is a bot.
+	 */
+	public boolean isFromBot() {
+		return myType == Type.MESSAGE && myFlag;
+	}
+
+	/**
+	 * Returns the URL of the stream, or the content of the message.
+	 *
+	 * @return the URL of the stream or the content of the message.
+	 */
+	public String getKey() {
+		return myKey;
+	}
+
+	/**
+	 * Returns the JDA event this slot was copied from.
+	 *
+	 * @return the JDA event.
+	 */
+	public Event getEvent() {
+		return myEvent;
+	}
+
+	/**
+	 * Returns the time in nanoseconds this event was published.
+	 *
+	 * @return the time this event was published.
+	 */
+	public long getPublished() {
+		return myPublished;
+	}
+
+	/**
+	 * Returns the route chosen for this event, or null if none yet.
+	 *
+	 * @return the route of this event.
+	 */
+	public Route getRoute() {
+		return myRoute;
+	}
+
+	/**
+	 * Sets the route of this event.
+	 *
+	 * @param theRoute is the route of this event.
+	 */
+	public void setRoute(final Route theRoute) {
+		myRoute = theRoute;
+	}
+
+	/**
+	 * Returns the message rendered for this event, or the name of its
+	 * command.
+	 *
+	 * @return the text of this event.
+	 */
+	public String getText() {
+		return myText;
+	}
+
+	/**
+	 * Sets the message rendered for this event, or the name of its
+	 * command.
+	 *
+	 * @param theText is the text of this event.
+	 */
+	public void setText(final String theText) {
+		myText = theText;
+	}
+
+	/**
+	 * Returns the time in minutes between digests of the guild that the
+	 * route stage saw, or 0 if this event was not routed to a digest.
+	 *
+	 * @return the time in minutes between digests.
+	 */
+	public int getDigestMinutes() {
+		return myDigestMinutes;
+	}
+
+	/**
+	 * Sets the time in minutes between digests of the guild, so that the
+	 * dispatch stage uses the same setting the route was chosen by.
+	 *
+	 * @param theMinutes is the time in minutes between digests.
+	 */
+	public void setDigestMinutes(final int theMinutes) {
+		myDigestMinutes = theMinutes;
+	}
+
+	/**
+	 * Returns true if theGame is being streamed.
+	 *
+	 * @param theGame is the game being checked, may be null.
+	 * @return whether theGame is being streamed.
+	 */
+	private static boolean isStreaming(final Game theGame) {
+		return theGame != null
+			   && theGame.getType().equals(GameType.STREAMING);
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.pipeline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bot.discord.StreamBot.executables.Commands;
+import bot.discord.StreamBot.executables.Digests;
+import bot.discord.StreamBot.executables.LiveBoards;
+import bot.discord.StreamBot.executables.Notifications;
+import bot.discord.StreamBot.profiling.CommandEvent;
+import bot.discord.StreamBot.profiling.StreamEvent;
+import bot.discord.StreamBot.system.CommandThrottle;
+import bot.discord.StreamBot.system.Preferences;
+import bot.discord.StreamBot.util.Configuration;
+import jdk.jfr.Event;
+import net.dv8tion.jda.core.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.core.events.user.update.UserUpdateGameEvent;
+
+/**
+ * BotStages.java builds the EventPipeline of Stream Bot. Events go
+ * through five stages: filter drops events Stream Bot does not act on,
+ * dedupe drops repeated stream starts and ends, route decides what should
+ * be done with each event, render builds the text of notifications, and
+ * dispatch sends messages and runs commands. Only the record of who is
+ * streaming kept by the dedupe stage is confined to one thread. The rest
+ * of the state is shared and guards itself: the command rate limits
+ * checked by the route stage are also swept by the scheduler, and the
+ * Digests, LiveBoards and Preferences used by the dispatch threads are
+ * also used by the timing wheel and the refresh task, through concurrent
+ * maps and locks.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class BotStages {
+	/**
+	 * The model that stores system preferences information.
+	 */
+	private final Preferences myPreferences;
+
+	/**
+	 * The digests of guilds that collect stream notifications.
+	 */
+	private final Digests myDigests;
+
+	/**
+	 * The live boards of guilds that list everyone streaming.
+	 */
+	private final LiveBoards myBoards;
+
+	/**
+	 * The throttle that limits how often commands may be used.
+	 */
+	private final CommandThrottle myThrottle;
+
+	/**
+	 * The constructor of BotStages.
+	 *
+	 * @param thePref is model that stores the system preferences.
+	 * @param theDigests are the digests of guilds that collect stream
+	 * notifications.
+	 * @param theBoards are the live boards of guilds.
+	 * @param theThrottle is the throttle that limits how often commands
+	 * may be used.
+	 */
+	public BotStages(final Preferences thePref, final Digests theDigests,
+					 final LiveBoards theBoards,
+					 final CommandThrottle theThrottle) {
+		myPreferences = thePref;
+		myDigests = theDigests;
+		myBoards = theBoards;
+		myThrottle = theThrottle;
+	}
+
+	/**
+	 * Builds the pipeline with theSize slots and theDispatchers threads
+	 * for the dispatch stage. The pipeline still needs to be started.
+	 *
+	 * @param theSize is the number of slots of the ring buffer.
+	 * @param theDispatchers is the number of dispatch threads.
+	 * @return the pipeline.
+	 */
+	public EventPipeline build(final int theSize, final int theDispatchers) {
+		final List<EventHandler> stages = new ArrayList<EventHandler>();
+		stages.add(this::filter);
+		stages.add(new Dedupe());
+		stages.add(this::route);
+		stages.add(this::render);
+
+		final List<EventHandler> dispatchers = new ArrayList<EventHandler>();
+		for (int i = 0; i < theDispatchers; i++) {
+			dispatchers.add(this::dispatch);
+		}
+
+		return new EventPipeline(theSize, stages, dispatchers);
+	}
+
+	/**
+	 * Drops game changes that neither start nor end a stream, and messages
+	 * from bots or that are not commands.
+	 *
+	 * @param theEvent is the event being handled.
+	 */
+	private void filter(final BotEvent theEvent) {
+		if (theEvent.getType() == BotEvent.Type.PRESENCE) {
+			if (!theEvent.isStreaming() && !theEvent.wasStreaming()) {
+				theEvent.setRoute(BotEvent.Route.DROP);
+			}
+		} else if (theEvent.getType() == BotEvent.Type.MESSAGE) {
+			final String prefix = Configuration.get().getCommandPrefix();
+			final String name = theEvent.getKey().startsWith(prefix)
+					? Commands.commandName(theEvent.getKey().substring(
+							prefix.length()))
+					: null;
+			if (name == null || theEvent.isFromBot()) {
+				theEvent.setRoute(BotEvent.Route.DROP);
+			} else {
+				theEvent.setText(name);
+			}
+		}
+	}
+
+	/**
+	 * Decides what the dispatch stage should do with theEvent. Stream
+	 * starts go to the live board or digest of guilds that have one, and
+	 * commands over their rate limit are dropped or warned about.
+	 *
+	 * @param theEvent is the event being handled.
+	 */
+	private void route(final BotEvent theEvent) {
+		if (theEvent.getType() == BotEvent.Type.PRESENCE) {
+			final UserUpdateGameEvent event =
+					(UserUpdateGameEvent) theEvent.getEvent();
+			final int minutes = myPreferences.getDigestMinutes(
+					event.getGuild().getName());
+			if (!theEvent.isStreaming()) {
+				theEvent.setRoute(BotEvent.Route.STREAM_END);
+			} else if (myPreferences.hasBoard(event.getGuild().getName())) {
+				theEvent.setRoute(BotEvent.Route.BOARD);
+			} else if (minutes > 0) {
+				// The setting may change before dispatch, so it is kept.
+				theEvent.setRoute(BotEvent.Route.DIGEST);
+				theEvent.setDigestMinutes(minutes);
+			} else {
+				theEvent.setRoute(BotEvent.Route.NOTIFY);
+			}
+		} else if (theEvent.getType() == BotEvent.Type.MESSAGE) {
+			final CommandThrottle.Result result = myThrottle.check(
+					theEvent.getText(),
+					Long.toString(theEvent.getUserID()),
+					theEvent.getGuildID() == 0 ? null
+					: Long.toString(theEvent.getGuildID()));
+			if (result == CommandThrottle.Result.ALLOWED) {
+				theEvent.setRoute(BotEvent.Route.COMMAND);
+			} else if (result == CommandThrottle.Result.WARN) {
+				theEvent.setRoute(BotEvent.Route.WARN);
+			} else {
+				theEvent.setRoute(BotEvent.Route.DROP);
+			}
+		} else if (theEvent.getType() == BotEvent.Type.GUILD_JOIN) {
+			theEvent.setRoute(BotEvent.Route.JOIN);
+		} else {
+			theEvent.setRoute(BotEvent.Route.RECONCILE);
+		}
+	}
+
+	/**
+	 * Builds the text of stream notifications that are sent right away.
+	 *
+	 * @param theEvent is the event being handled.
+	 */
+	private void render(final BotEvent theEvent) {
+		if (theEvent.getRoute() == BotEvent.Route.NOTIFY) {
+			theEvent.setText(Notifications.renderNotificationStream(
+					(UserUpdateGameEvent) theEvent.getEvent()));
+		}
+	}
+
+	/**
+	 * Sends the messages and runs the commands decided by the earlier
+	 * stages, recording a flight recorder event for each command and
+	 * stream.
+	 *
+	 * @param theEvent is the event being handled.
+	 */
+	private void dispatch(final BotEvent theEvent) {
+		Event record = null;
+		if (theEvent.getRoute() == BotEvent.Route.COMMAND) {
+			record = CommandEvent.started(theEvent.getText(),
+					theEvent.getGuildID(), theEvent.getPublished());
+		} else if (theEvent.getType() == BotEvent.Type.PRESENCE) {
+			record = StreamEvent.started(theEvent.getRoute().name(),
+					theEvent.getGuildID(), theEvent.getPublished());
+		}
+
+		try {
+			deliver(theEvent);
+		} finally {
+			if (record != null) {
+				record.commit();
+			}
+		}
+	}
+
+	/**
+	 * Does what the route of theEvent calls for.
+	 *
+	 * @param theEvent is the event being handled.
+	 */
+	private void deliver(final BotEvent theEvent) {
+		switch (theEvent.getRoute()) {
+			case NOTIFY:
+				Notifications.sendNotificationStream(
+						(UserUpdateGameEvent) theEvent.getEvent(),
+						myPreferences, theEvent.getText());
+				break;
+			case DIGEST:
+				myDigests.streamStarted(
+						(UserUpdateGameEvent) theEvent.getEvent(),
+						theEvent.getDigestMinutes());
+				break;
+			case STREAM_END:
+				myDigests.streamEnded(
+						(UserUpdateGameEvent) theEvent.getEvent());
+				myBoards.streamEnded(
+						(UserUpdateGameEvent) theEvent.getEvent());
+				break;
+			case BOARD:
+				myBoards.streamStarted(
+						(UserUpdateGameEvent) theEvent.getEvent());
+				break;
+			case COMMAND:
+				Commands.execute((MessageReceivedEvent) theEvent.getEvent(),
+								 theEvent.getText(), myPreferences,
+								 myThrottle, myBoards);
+				break;
+			case WARN:
+				Notifications.sendThrottled(
+						(MessageReceivedEvent) theEvent.getEvent());
+				break;
+			case JOIN:
+				Commands.joinGuild(((GuildJoinEvent) theEvent.getEvent())
+								   .getGuild(), myPreferences);
+				break;
+			case RECONCILE:
+				Commands.reconcileGuilds(theEvent.getEvent().getJDA(),
+										 myPreferences);
+				// Streams that started while offline have no event.
+				myBoards.fillAll(theEvent.getEvent().getJDA());
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Dedupe.java drops stream starts of users already known to be
+	 * streaming the same URL in a guild, and stream ends of users not
+	 * known to be streaming. Only the dedupe stage thread uses it.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private static final class Dedupe implements EventHandler {
+		/**
+		 * A map of each streaming guild and user pair with the URL of the
+		 * stream, or an empty string if it has none.
+		 */
+		private final Map<String, String> myStreaming =
+				new HashMap<String, String>();
+
+		/**
+		 * Drops theEvent if it repeats the known state of the user.
+		 *
+		 * @param theEvent is the event being handled.
+		 */
+		@Override
+		public void onEvent(final BotEvent theEvent) {
+			if (theEvent.getType() == BotEvent.Type.PRESENCE) {
+				final String key = theEvent.getGuildID() + ":"
+								   + theEvent.getUserID();
+				if (theEvent.isStreaming()) {
+					final String url = theEvent.getKey() == null ? ""
+									   : theEvent.getKey();
+					if (url.equals(myStreaming.put(key, url))) {
+						theEvent.setRoute(BotEvent.Route.DROP);
+					}
+				} else if (myStreaming.remove(key) == null) {
+					theEvent.setRoute(BotEvent.Route.DROP);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,24 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.pipeline;
+
+/**
+ * EventHandler.java is a stage of the EventPipeline. Each handler is only
+ * ever called by the one thread that runs its stage, so any state it
+ * keeps needs no locking.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public interface EventHandler {
+	/**
+	 * Handles theEvent. Events routed to BotEvent.Route.DROP by an earlier
+	 * stage are not passed on.
+	 *
+	 * @param theEvent is the event being handled.
+	 */
+	void onEvent(BotEvent theEvent);
+}
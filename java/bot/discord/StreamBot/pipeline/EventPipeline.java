@@ -0,0 +1,525 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EventPipeline.java passes events from the JDA listeners to the stages
+ * that handle them through a ring buffer of preallocated BotEvent slots.
+ * Listeners claim a slot, copy their event into it and publish it. Each
+ * stage runs on its own thread and handles every slot after the stage
+ * before it is done with it, so a slot is only ever written by one thread
+ * at a time and no locks are needed. The last stage may run on several
+ * threads, each handling the events of a share of the guilds, so events of
+ * one guild are still handled in order.
+ * <p>
+ * Listeners wait when the ring buffer is full until the last stage has
+ * caught up, so memory use is fixed. This is the backpressure of the
+ * pipeline, and it stalls the JDA thread that read the event, which also
+ * sends the heartbeats of the shard. tryClaim() bounds the wait by
+ * CLAIM_NANOS and counts the event as dropped after it, so listeners of
+ * frequent events use it to keep the shard connected. Stages that have
+ * been idle for a while stop polling and sleep until an event reaches
+ * them.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class EventPipeline {
+	/**
+	 * The number of times an idle stage spins before yielding.
+	 */
+	private static final int SPIN_TRIES = 100;
+
+	/**
+	 * The number of times an idle stage yields before sleeping.
+	 */
+	private static final int YIELD_TRIES = 200;
+
+	/**
+	 * The number of times an idle stage waits before going to sleep.
+	 */
+	private static final int SLEEP_TRIES = YIELD_TRIES + 2000;
+
+	/**
+	 * The time in nanoseconds an idle stage or full producer sleeps.
+	 */
+	private static final long PARK_NANOS = 50000;
+
+	/**
+	 * The longest time in nanoseconds a sleeping stage sleeps before
+	 * checking for events, in case it missed being woken.
+	 */
+	private static final long SLEEP_NANOS = 100 * 1000000L;
+
+	/**
+	 * The longest time in nanoseconds tryClaim() waits for a slot.
+	 */
+	private static final long CLAIM_NANOS = 100 * 1000000L;
+
+	/**
+	 * The slots of the ring buffer.
+	 */
+	private final BotEvent[] mySlots;
+
+	/**
+	 * The mask for finding the slot of a sequence.
+	 */
+	private final int myMask;
+
+	/**
+	 * The number of bits of a sequence used to find its slot.
+	 */
+	private final int myShift;
+
+	/**
+	 * The lap of the ring buffer each slot was last published on.
+	 */
+	private final AtomicIntegerArray myPublished;
+
+	/**
+	 * The last sequence claimed by a listener.
+	 */
+	private final AtomicLong myClaimed;
+
+	/**
+	 * The stages, in order, each with one or more consumers.
+	 */
+	private final List<Consumer[]> myStages;
+
+	/**
+	 * The lowest sequence handled by the last stage, as last seen by a
+	 * listener. Saves reading every consumer on each claim.
+	 */
+	private volatile long myGatingCache;
+
+	/**
+	 * Whether the stages are running.
+	 */
+	private volatile boolean myRunning;
+
+	/**
+	 * The number of consumers that are sleeping.
+	 */
+	private final AtomicInteger mySleepers;
+
+	/**
+	 * The number of events dropped by tryClaim() because the ring buffer
+	 * stayed full.
+	 */
+	private final AtomicLong myDropped;
+
+	/**
+	 * The constructor of an EventPipeline.
+	 *
+	 * @param theSize is the number of slots, rounded up to a power of two.
+	 * @param theStages are the handlers of every stage but the last, in
+	 * order.
+	 * @param theDispatchers are the handlers of the last stage, each
+	 * handling the events of a share of the guilds.
+	 */
+	public EventPipeline(final int theSize, final List<EventHandler> theStages,
+						 final List<EventHandler> theDispatchers) {
+		final int size = Integer.highestOneBit(Math.max(theSize, 2) * 2 - 1);
+		mySlots = new BotEvent[size];
+		for (int i = 0; i < size; i++) {
+			mySlots[i] = new BotEvent();
+		}
+		myMask = size - 1;
+		myShift = Integer.numberOfTrailingZeros(size);
+		myPublished = new AtomicIntegerArray(size);
+		for (int i = 0; i < size; i++) {
+			myPublished.set(i, -1);
+		}
+		myClaimed = new AtomicLong(-1);
+		myGatingCache = -1;
+		mySleepers = new AtomicInteger();
+		myDropped = new AtomicLong();
+
+		// Links each stage to the consumers of the stage before it.
+		myStages = new ArrayList<Consumer[]>();
+		Consumer[] previous = new Consumer[0];
+		for (final EventHandler handler: theStages) {
+			previous = new Consumer[] {new Consumer(handler, 0, 1, previous)};
+			myStages.add(previous);
+		}
+		final Consumer[] dispatchers = new Consumer[theDispatchers.size()];
+		for (int i = 0; i < dispatchers.length; i++) {
+			dispatchers[i] = new Consumer(theDispatchers.get(i), i,
+										  dispatchers.length, previous);
+		}
+		myStages.add(dispatchers);
+	}
+
+	/**
+	 * Starts a thread for each consumer of each stage.
+	 */
+	public void start() {
+		myRunning = true;
+		for (int stage = 0; stage < myStages.size(); stage++) {
+			final Consumer[] consumers = myStages.get(stage);
+			for (int i = 0; i < consumers.length; i++) {
+				final Thread thread = new Thread(consumers[i],
+						"pipeline-" + stage + "-" + i);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+	}
+
+	/**
+	 * Stops every stage once it has handled the events already published.
+	 */
+	public void stop() {
+		myRunning = false;
+		wake();
+	}
+
+	/**
+	 * Claims the next slot, waiting if the ring buffer is full. The caller
+	 * must fill the slot returned by get() and then call publish(), even if
+	 * filling it fails.
+	 *
+	 * @return the sequence of the claimed slot.
+	 */
+	public long claim() {
+		return claim(-1);
+	}
+
+	/**
+	 * Claims the next slot like claim(), but waits at most CLAIM_NANOS for
+	 * the ring buffer to have room. Returns -1 and counts the event as
+	 * dropped if it did not, in which case nothing must be published.
+	 *
+	 * @return the sequence of the claimed slot, or -1.
+	 */
+	public long tryClaim() {
+		final long result = claim(CLAIM_NANOS);
+
+		if (result < 0) {
+			final long dropped = myDropped.incrementAndGet();
+			// Warns on the first drop and then ever more rarely.
+			if (Long.bitCount(dropped) == 1) {
+				System.err.println("The event pipeline is full, "
+								   + dropped + " events dropped so far.");
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of events dropped by tryClaim() because the ring
+	 * buffer stayed full.
+	 *
+	 * @return the number of dropped events.
+	 */
+	public long getDropped() {
+		return myDropped.get();
+	}
+
+	/**
+	 * Claims the next slot, waiting at most theTimeoutNanos for the ring
+	 * buffer to have room, or without a limit if it is negative.
+	 *
+	 * @param theTimeoutNanos is the longest wait, or negative for none.
+	 * @return the sequence of the claimed slot, or -1 if the wait ran out.
+	 */
+	private long claim(final long theTimeoutNanos) {
+		// The time the wait started, set once the ring buffer is full.
+		long start = 0;
+		boolean waiting = false;
+
+		while (true) {
+			final long current = myClaimed.get();
+			final long next = current + 1;
+			final long wrap = next - mySlots.length;
+
+			if (wrap > myGatingCache) {
+				final long handled = getHandled();
+				myGatingCache = handled;
+				if (wrap > handled) {
+					if (!waiting) {
+						start = System.nanoTime();
+						waiting = true;
+					} else if (theTimeoutNanos >= 0
+							   && System.nanoTime() - start >= theTimeoutNanos) {
+						return -1;
+					}
+					// The slot is still being used, wait for the last stage.
+					LockSupport.parkNanos(PARK_NANOS);
+					continue;
+				}
+			}
+
+			if (myClaimed.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Returns the last sequence handled by every consumer of the last
+	 * stage. Every event up to it has been dispatched or dropped.
+	 *
+	 * @return the last sequence handled by the last stage.
+	 */
+	public long getHandled() {
+		return minimum(myStages.get(myStages.size() - 1), Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the slot of theSequence.
+	 *
+	 * @param theSequence is the sequence returned by claim().
+	 * @return the slot of theSequence.
+	 */
+	public BotEvent get(final long theSequence) {
+		return mySlots[(int) theSequence & myMask];
+	}
+
+	/**
+	 * Makes the slot of theSequence visible to the first stage.
+	 *
+	 * @param theSequence is the sequence returned by claim().
+	 */
+	public void publish(final long theSequence) {
+		myPublished.lazySet((int) theSequence & myMask,
+							(int) (theSequence >>> myShift));
+		signal();
+	}
+
+	/**
+	 * Wakes the sleeping consumers, if there are any, after an event was
+	 * published or handled by a stage.
+	 */
+	private void signal() {
+		if (mySleepers.get() > 0) {
+			wake();
+		}
+	}
+
+	/**
+	 * Wakes every consumer so that it checks for events again.
+	 */
+	private void wake() {
+		for (final Consumer[] consumers: myStages) {
+			for (final Consumer consumer: consumers) {
+				final Thread thread = consumer.myThread;
+				if (thread != null) {
+					LockSupport.unpark(thread);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the highest sequence from theNext on such that every
+	 * sequence up to it has been published, or theNext - 1 if theNext has
+	 * not been published.
+	 *
+	 * @param theNext is the first sequence being checked.
+	 * @return the highest sequence published without gaps.
+	 */
+	private long highestPublished(final long theNext) {
+		final long claimed = myClaimed.get();
+		long result = theNext - 1;
+
+		for (long sequence = theNext; sequence <= claimed; sequence++) {
+			if (myPublished.get((int) sequence & myMask)
+				!= (int) (sequence >>> myShift)) {
+				break;
+			}
+			result = sequence;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the lowest sequence handled by theConsumers, or theDefault
+	 * if there are none.
+	 *
+	 * @param theConsumers are the consumers being checked.
+	 * @param theDefault is the result if theConsumers is empty.
+	 * @return the lowest sequence handled by theConsumers.
+	 */
+	private static long minimum(final Consumer[] theConsumers,
+								final long theDefault) {
+		long result = theDefault;
+		for (final Consumer consumer: theConsumers) {
+			result = Math.min(result, consumer.mySequence.get());
+		}
+		return result;
+	}
+
+	/**
+	 * Consumer.java runs one handler of a stage on its own thread. It
+	 * handles each slot once every consumer of the stage before it is done
+	 * with it, and records how far it has got for the stage after it.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private final class Consumer implements Runnable {
+		/**
+		 * The handler of this consumer.
+		 */
+		private final EventHandler myHandler;
+
+		/**
+		 * The share of the guilds this consumer handles.
+		 */
+		private final int myPartition;
+
+		/**
+		 * The number of shares the guilds are split into.
+		 */
+		private final int myPartitions;
+
+		/**
+		 * The consumers of the stage before this one, or none for the
+		 * first stage.
+		 */
+		private final Consumer[] myUpstream;
+
+		/**
+		 * The last sequence this consumer has handled.
+		 */
+		private final AtomicLong mySequence;
+
+		/**
+		 * The thread running this consumer, or null before it starts.
+		 */
+		private volatile Thread myThread;
+
+		/**
+		 * The constructor of a Consumer.
+		 *
+		 * @param theHandler is the handler of this consumer.
+		 * @param thePartition is the share of the guilds it handles.
+		 * @param thePartitions is the number of shares.
+		 * @param theUpstream are the consumers of the stage before.
+		 */
+		Consumer(final EventHandler theHandler, final int thePartition,
+				 final int thePartitions, final Consumer[] theUpstream) {
+			myHandler = theHandler;
+			myPartition = thePartition;
+			myPartitions = thePartitions;
+			myUpstream = theUpstream;
+			mySequence = new AtomicLong(-1);
+		}
+
+		/**
+		 * Handles slots as they become available until the pipeline is
+		 * stopped and every available slot has been handled.
+		 */
+		@Override
+		public void run() {
+			long next = mySequence.get() + 1;
+			int idle = 0;
+			myThread = Thread.currentThread();
+
+			while (true) {
+				final long available = available(next);
+
+				if (available >= next) {
+					for (long sequence = next; sequence <= available;
+						 sequence++) {
+						handle(mySlots[(int) sequence & myMask]);
+					}
+					mySequence.lazySet(available);
+					signal();
+					next = available + 1;
+					idle = 0;
+				} else if (!myRunning) {
+					break;
+				} else {
+					idle = idle(idle, next);
+				}
+			}
+		}
+
+		/**
+		 * Returns the last sequence this consumer may handle, which is
+		 * below theNext if there is nothing new.
+		 *
+		 * @param theNext is the next sequence this consumer handles.
+		 * @return the last sequence available to this consumer.
+		 */
+		private long available(final long theNext) {
+			return myUpstream.length == 0 ? highestPublished(theNext)
+					: minimum(myUpstream, Long.MAX_VALUE);
+		}
+
+		/**
+		 * Passes theEvent to the handler if it was not dropped and belongs
+		 * to the share of this consumer.
+		 *
+		 * @param theEvent is the event in the slot.
+		 */
+		private void handle(final BotEvent theEvent) {
+			if (theEvent.getRoute() != BotEvent.Route.DROP
+				&& (myPartitions == 1
+					|| Math.floorMod(Long.hashCode(theEvent.getGuildID()),
+									 myPartitions) == myPartition)) {
+				try {
+					myHandler.onEvent(theEvent);
+				} catch (final RuntimeException ex) {
+					// One bad event must not stop the stage.
+					ex.printStackTrace();
+					theEvent.setRoute(BotEvent.Route.DROP);
+				}
+			}
+		}
+
+		/**
+		 * Waits a little while there is nothing to handle, spinning at
+		 * first and then yielding and sleeping the longer it stays idle.
+		 * Once idle for long enough, sleeps until woken by signal().
+		 *
+		 * @param theCount is the number of times waited so far.
+		 * @param theNext is the next sequence this consumer handles.
+		 * @return the number of times waited, including this one.
+		 */
+		private int idle(final int theCount, final long theNext) {
+			if (theCount >= SLEEP_TRIES) {
+				sleep(theNext);
+			} else if (theCount >= YIELD_TRIES) {
+				LockSupport.parkNanos(PARK_NANOS);
+			} else if (theCount >= SPIN_TRIES) {
+				Thread.yield();
+			}
+			return Math.min(theCount + 1, SLEEP_TRIES);
+		}
+
+		/**
+		 * Sleeps until woken by signal() or stop(). Checks once more for
+		 * events after being counted as a sleeper, so an event published
+		 * before that is not missed. Publishing does not fence, so a wake
+		 * up may still be missed in a race; the sleep is bounded by
+		 * SLEEP_NANOS so that such an event is only delayed.
+		 *
+		 * @param theNext is the next sequence this consumer handles.
+		 */
+		private void sleep(final long theNext) {
+			mySleepers.incrementAndGet();
+			try {
+				if (myRunning && available(theNext) < theNext) {
+					LockSupport.parkNanos(this, SLEEP_NANOS);
+				}
+			} finally {
+				mySleepers.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,518 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.pipeline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PipelineBenchmark.java compares handling events inline on the threads
+ * that receive them, the way the listeners used to, with handling them in
+ * the EventPipeline with one, two and four dispatch threads. Synthetic
+ * presence changes go through the same five stages as in BotStages, with
+ * a dispatch stage that does a fixed amount of busy work in place of
+ * sending a message. The throughput and the time from publishing each
+ * event to dispatching it are printed for each run.
+ * <p>
+ * Usage: PipelineBenchmark [events] [producers] [work]
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class PipelineBenchmark {
+	/**
+	 * The number of events sent by default.
+	 */
+	private static final int EVENTS = 2000000;
+
+	/**
+	 * The number of threads publishing events by default.
+	 */
+	private static final int PRODUCERS = 4;
+
+	/**
+	 * The number of busy work iterations of each dispatch by default.
+	 */
+	private static final int WORK = 200;
+
+	/**
+	 * The number of guilds events are spread over.
+	 */
+	private static final int GUILDS = 1000;
+
+	/**
+	 * The number of users in each guild.
+	 */
+	private static final int USERS = 50;
+
+	/**
+	 * The number of slots of the pipeline.
+	 */
+	private static final int SIZE = 4096;
+
+	/**
+	 * The numbers of dispatch threads the pipeline is run with.
+	 */
+	private static final int[] DISPATCHERS = {1, 2, 4};
+
+	/**
+	 * The stream URL of each user.
+	 */
+	private static final String[] URLS = new String[USERS];
+
+	static {
+		for (int i = 0; i < USERS; i++) {
+			URLS[i] = "https://www.twitch.tv/user" + i;
+		}
+	}
+
+	/**
+	 * Prevents the busy work from being optimized away.
+	 */
+	private static volatile long theSink;
+
+	/**
+	 * The main method of the benchmark. Each run is done twice and only the
+	 * second is printed, so the first warms up the JIT.
+	 *
+	 * @param theArgs are the number of events, producers and busy work
+	 * iterations, each optional.
+	 */
+	public static void main(final String[] theArgs) throws Exception {
+		final int events = theArgs.length > 0
+				? Integer.parseInt(theArgs[0]) : EVENTS;
+		final int producers = theArgs.length > 1
+				? Integer.parseInt(theArgs[1]) : PRODUCERS;
+		final int work = theArgs.length > 2
+				? Integer.parseInt(theArgs[2]) : WORK;
+
+		System.out.println(events + " events, " + producers
+						   + " producers, " + work + " work");
+		System.out.printf("%-14s %12s %10s %10s %10s%n", "mode",
+						  "events/s", "p50 us", "p99 us", "p99.9 us");
+
+		for (int round = 0; round < 2; round++) {
+			print("direct", runDirect(events, producers, work), round);
+			for (final int dispatchers: DISPATCHERS) {
+				print("pipeline x" + dispatchers, runPipeline(events,
+					  producers, work, dispatchers), round);
+			}
+		}
+	}
+
+	/**
+	 * Prints theResult of the second round.
+	 *
+	 * @param theMode is the name of the run.
+	 * @param theResult is the result of the run.
+	 * @param theRound is the round of the run.
+	 */
+	private static void print(final String theMode, final Result theResult,
+							  final int theRound) {
+		if (theRound > 0) {
+			System.out.printf("%-14s %12.0f %10.1f %10.1f %10.1f%n",
+					theMode, theResult.myThroughput,
+					theResult.myLatency.percentile(0.5) / 1000.0,
+					theResult.myLatency.percentile(0.99) / 1000.0,
+					theResult.myLatency.percentile(0.999) / 1000.0);
+		}
+	}
+
+	/**
+	 * Handles every event inline on the producer threads, sharing the
+	 * streaming state through a ConcurrentHashMap.
+	 *
+	 * @param theEvents is the number of events.
+	 * @param theProducers is the number of producer threads.
+	 * @param theWork is the busy work of each dispatch.
+	 * @return the result of the run.
+	 */
+	private static Result runDirect(final int theEvents,
+									final int theProducers,
+									final int theWork) throws Exception {
+		final Map<String, String> streaming =
+				new ConcurrentHashMap<String, String>();
+		final List<Histogram> histograms = new ArrayList<Histogram>();
+		final List<Thread> threads = new ArrayList<Thread>();
+
+		for (int i = 0; i < theProducers; i++) {
+			final Histogram histogram = new Histogram();
+			final int seed = i;
+			histograms.add(histogram);
+			threads.add(new Thread(() -> {
+				final Random random = new Random(seed);
+				final BotEvent event = new BotEvent();
+				final Stages stages = new Stages(streaming, theWork, histogram);
+				for (int n = 0; n < theEvents / theProducers; n++) {
+					next(random, event);
+					stages.handle(event);
+				}
+			}));
+		}
+
+		final long start = System.nanoTime();
+		run(threads);
+		return new Result(theEvents, System.nanoTime() - start, histograms);
+	}
+
+	/**
+	 * Publishes every event into an EventPipeline from the producer
+	 * threads and waits until every event has been handled.
+	 *
+	 * @param theEvents is the number of events.
+	 * @param theProducers is the number of producer threads.
+	 * @param theWork is the busy work of each dispatch.
+	 * @param theDispatchers is the number of dispatch threads.
+	 * @return the result of the run.
+	 */
+	private static Result runPipeline(final int theEvents,
+									  final int theProducers,
+									  final int theWork,
+									  final int theDispatchers)
+									  throws Exception {
+		// The stages before dispatch do not use the histogram.
+		final Stages stages = new Stages(new HashMap<String, String>(),
+										 theWork, null);
+		final List<Histogram> histograms = new ArrayList<Histogram>();
+		final List<EventHandler> dispatchers = new ArrayList<EventHandler>();
+		for (int i = 0; i < theDispatchers; i++) {
+			final Stages dispatcher = new Stages(null, theWork,
+												 new Histogram());
+			histograms.add(dispatcher.myLatency);
+			dispatchers.add(dispatcher::dispatch);
+		}
+
+		final List<EventHandler> handlers = new ArrayList<EventHandler>();
+		handlers.add(stages::filter);
+		handlers.add(stages::dedupe);
+		handlers.add(stages::route);
+		handlers.add(stages::render);
+		final EventPipeline pipeline = new EventPipeline(SIZE, handlers,
+														 dispatchers);
+		pipeline.start();
+
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < theProducers; i++) {
+			final int seed = i;
+			threads.add(new Thread(() -> {
+				final Random random = new Random(seed);
+				for (int n = 0; n < theEvents / theProducers; n++) {
+					final long sequence = pipeline.claim();
+					try {
+						next(random, pipeline.get(sequence));
+					} finally {
+						pipeline.publish(sequence);
+					}
+				}
+			}));
+		}
+
+		final long start = System.nanoTime();
+		run(threads);
+		final long last = (long) theEvents / theProducers * theProducers - 1;
+		while (pipeline.getHandled() < last) {
+			Thread.yield();
+		}
+		final long elapsed = System.nanoTime() - start;
+		pipeline.stop();
+		return new Result(theEvents, elapsed, histograms);
+	}
+
+	/**
+	 * Starts theThreads and waits for them to finish.
+	 *
+	 * @param theThreads are the threads being run.
+	 */
+	private static void run(final List<Thread> theThreads)
+			throws InterruptedException {
+		for (final Thread thread: theThreads) {
+			thread.start();
+		}
+		for (final Thread thread: theThreads) {
+			thread.join();
+		}
+	}
+
+	/**
+	 * Fills theEvent with a random presence change. About half of them
+	 * start a stream, a quarter end one and the rest change some other
+	 * game.
+	 *
+	 * @param theRandom is the random source of the producer.
+	 * @param theEvent is the slot being filled.
+	 */
+	private static void next(final Random theRandom, final BotEvent theEvent) {
+		final int user = theRandom.nextInt(USERS);
+		final int kind = theRandom.nextInt(4);
+		theEvent.set(BotEvent.Type.PRESENCE, theRandom.nextInt(GUILDS) + 1,
+					 user, kind < 2, kind == 2, URLS[user], null);
+	}
+
+	/**
+	 * Stages.java holds the synthetic handlers of each stage, doing the
+	 * same kind of work as BotStages without JDA.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private static final class Stages {
+		/**
+		 * A map of each streaming guild and user pair with its URL.
+		 */
+		private final Map<String, String> myStreaming;
+
+		/**
+		 * The busy work of each dispatch.
+		 */
+		private final int myWork;
+
+		/**
+		 * The latency of each dispatch, written only by its thread.
+		 */
+		private final Histogram myLatency;
+
+		/**
+		 * The constructor of Stages.
+		 *
+		 * @param theStreaming is the streaming state, or null if unused.
+		 * @param theWork is the busy work of each dispatch.
+		 * @param theLatency is the histogram of dispatch latencies, or null
+		 * if unused.
+		 */
+		Stages(final Map<String, String> theStreaming, final int theWork,
+			   final Histogram theLatency) {
+			myStreaming = theStreaming;
+			myWork = theWork;
+			myLatency = theLatency;
+		}
+
+		/**
+		 * Runs every stage on theEvent, as the listeners used to.
+		 *
+		 * @param theEvent is the event being handled.
+		 */
+		void handle(final BotEvent theEvent) {
+			filter(theEvent);
+			if (theEvent.getRoute() == null) {
+				dedupe(theEvent);
+			}
+			if (theEvent.getRoute() == null) {
+				route(theEvent);
+				render(theEvent);
+				dispatch(theEvent);
+			}
+		}
+
+		/**
+		 * Drops game changes that neither start nor end a stream.
+		 *
+		 * @param theEvent is the event being handled.
+		 */
+		void filter(final BotEvent theEvent) {
+			if (!theEvent.isStreaming() && !theEvent.wasStreaming()) {
+				theEvent.setRoute(BotEvent.Route.DROP);
+			}
+		}
+
+		/**
+		 * Drops repeated stream starts and ends of unknown streams.
+		 *
+		 * @param theEvent is the event being handled.
+		 */
+		void dedupe(final BotEvent theEvent) {
+			final String key = theEvent.getGuildID() + ":"
+							   + theEvent.getUserID();
+			if (theEvent.isStreaming()) {
+				if (theEvent.getKey().equals(myStreaming.put(key,
+						theEvent.getKey()))) {
+					theEvent.setRoute(BotEvent.Route.DROP);
+				}
+			} else if (myStreaming.remove(key) == null) {
+				theEvent.setRoute(BotEvent.Route.DROP);
+			}
+		}
+
+		/**
+		 * Sends every tenth guild's streams to a digest.
+		 *
+		 * @param theEvent is the event being handled.
+		 */
+		void route(final BotEvent theEvent) {
+			if (!theEvent.isStreaming()) {
+				theEvent.setRoute(BotEvent.Route.STREAM_END);
+			} else if (theEvent.getGuildID() % 10 == 0) {
+				theEvent.setRoute(BotEvent.Route.DIGEST);
+			} else {
+				theEvent.setRoute(BotEvent.Route.NOTIFY);
+			}
+		}
+
+		/**
+		 * Builds the text of stream notifications.
+		 *
+		 * @param theEvent is the event being handled.
+		 */
+		void render(final BotEvent theEvent) {
+			if (theEvent.getRoute() == BotEvent.Route.NOTIFY) {
+				final StringBuilder builder = new StringBuilder();
+				builder.append("<@").append(theEvent.getUserID());
+				builder.append("> is now streaming!\n");
+				builder.append(theEvent.getKey());
+				theEvent.setText(builder.toString());
+			}
+		}
+
+		/**
+		 * Does the busy work in place of sending a message and records the
+		 * time since theEvent was published.
+		 *
+		 * @param theEvent is the event being handled.
+		 */
+		void dispatch(final BotEvent theEvent) {
+			long hash = theEvent.getText() == null ? 0
+						: theEvent.getText().hashCode();
+			for (int i = 0; i < myWork; i++) {
+				hash = hash * 31 + i;
+			}
+			theSink = hash;
+			myLatency.record(System.nanoTime() - theEvent.getPublished());
+		}
+	}
+
+	/**
+	 * Histogram.java counts latencies in buckets that are within about 3%
+	 * of each other, so percentiles can be read without keeping every
+	 * value.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private static final class Histogram {
+		/**
+		 * The number of bits of each value kept, counting its highest bit,
+		 * so that each power of two is split into 32 buckets.
+		 */
+		private static final int SUB_BITS = 6;
+
+		/**
+		 * The count of values in each bucket.
+		 */
+		private final long[] myCounts = new long[64 << SUB_BITS];
+
+		/**
+		 * The number of values recorded.
+		 */
+		private long myTotal;
+
+		/**
+		 * Records theValue.
+		 *
+		 * @param theValue is a value of zero or more.
+		 */
+		void record(final long theValue) {
+			myCounts[index(Math.max(theValue, 0))]++;
+			myTotal++;
+		}
+
+		/**
+		 * Adds the counts of theOther to this histogram.
+		 *
+		 * @param theOther is the histogram being added.
+		 */
+		void add(final Histogram theOther) {
+			for (int i = 0; i < myCounts.length; i++) {
+				myCounts[i] += theOther.myCounts[i];
+			}
+			myTotal += theOther.myTotal;
+		}
+
+		/**
+		 * Returns the lowest value of the bucket holding theFraction of
+		 * the values recorded.
+		 *
+		 * @param theFraction is the percentile as a fraction.
+		 * @return the value at the percentile.
+		 */
+		long percentile(final double theFraction) {
+			final long target = (long) Math.ceil(myTotal * theFraction);
+			long seen = 0;
+			for (int i = 0; i < myCounts.length; i++) {
+				seen += myCounts[i];
+				if (seen >= target && seen > 0) {
+					return value(i);
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Returns the bucket of theValue.
+		 *
+		 * @param theValue is a value of zero or more.
+		 * @return the index of its bucket.
+		 */
+		private static int index(final long theValue) {
+			final int bits = 64 - Long.numberOfLeadingZeros(theValue);
+			if (bits <= SUB_BITS) {
+				return (int) theValue;
+			}
+			final int shift = bits - SUB_BITS;
+			return (shift << SUB_BITS) + (int) (theValue >>> shift);
+		}
+
+		/**
+		 * Returns the lowest value of theIndex bucket.
+		 *
+		 * @param theIndex is the index of a bucket.
+		 * @return the lowest value in it.
+		 */
+		private static long value(final int theIndex) {
+			final int shift = theIndex >>> SUB_BITS;
+			if (shift == 0) {
+				return theIndex;
+			}
+			return (long) (theIndex - (shift << SUB_BITS)) << shift;
+		}
+	}
+
+	/**
+	 * Result.java is the throughput and latency of one run.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private static final class Result {
+		/**
+		 * The events handled per second.
+		 */
+		private final double myThroughput;
+
+		/**
+		 * The latencies of every dispatch thread.
+		 */
+		private final Histogram myLatency;
+
+		/**
+		 * The constructor of a Result.
+		 *
+		 * @param theEvents is the number of events.
+		 * @param theNanos is the time the run took.
+		 * @param theHistograms are the histograms of each thread.
+		 */
+		Result(final int theEvents, final long theNanos,
+			   final List<Histogram> theHistograms) {
+			myThroughput = theEvents * 1e9 / theNanos;
+			myLatency = new Histogram();
+			for (final Histogram histogram: theHistograms) {
+				myLatency.add(histogram);
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * CommandEvent.java is a flight recorder event for one command run by the
+ * dispatch stage of the pipeline. Its duration is the time taken to run
+ * the command, and the time it waited in the pipeline is recorded with
+ * it.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+@Name("streambot.Command")
+@Label("Command")
+@Category("StreamBot")
+@Description("A command run by Stream Bot")
+public final class CommandEvent extends jdk.jfr.Event {
+	/**
+	 * The name of the command.
+	 */
+	@Label("Command")
+	private String command;
+
+	/**
+	 * The ID of the guild, or 0 for direct messages.
+	 */
+	@Label("Guild ID")
+	private long guildID;
+
+	/**
+	 * The time in nanoseconds from publishing the message to running the
+	 * command.
+	 */
+	@Label("Queued")
+	@Timespan(Timespan.NANOSECONDS)
+	private long queued;
+
+	/**
+	 * Begins a CommandEvent for the guild with the ID theGuildID, published into
+	 * the pipeline at thePublished. Call commit() once it is handled.
+	 *
+	 * @param theCommand is the name of the command.
+	 * @param theGuildID is the ID of the guild.
+	 * @param thePublished is the time in nanoseconds it was published.
+	 * @return the started event.
+	 */
+	public static CommandEvent started(final String theCommand,
+									   final long theGuildID,
+									   final long thePublished) {
+		final CommandEvent result = new CommandEvent();
+		result.command = theCommand;
+		result.guildID = theGuildID;
+		result.queued = System.nanoTime() - thePublished;
+		result.begin();
+		return result;
+	}
+}
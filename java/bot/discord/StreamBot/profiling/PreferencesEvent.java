@@ -0,0 +1,79 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * PreferencesEvent.java is a flight recorder event for one load or save
+ * of the system preferences file.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+@Name("streambot.Preferences")
+@Label("Preferences")
+@Category("StreamBot")
+@Description("A load or save of the system preferences file")
+public final class PreferencesEvent extends jdk.jfr.Event {
+	/**
+	 * The operation, one of "load", "refresh" or "save".
+	 */
+	@Label("Operation")
+	private String operation;
+
+	/**
+	 * The number of guilds read or written.
+	 */
+	@Label("Guilds")
+	private int guilds;
+
+	/**
+	 * The size of the file read or written.
+	 */
+	@Label("Bytes")
+	@DataAmount
+	private long bytes;
+
+	/**
+	 * Whether the file was read or written successfully.
+	 */
+	@Label("Success")
+	private boolean success;
+
+	/**
+	 * Begins a PreferencesEvent for theOperation. Call completed() once
+	 * the file has been read or written.
+	 *
+	 * @param theOperation is the operation, "load", "refresh" or "save".
+	 * @return the started event.
+	 */
+	public static PreferencesEvent started(final String theOperation) {
+		final PreferencesEvent result = new PreferencesEvent();
+		result.operation = theOperation;
+		result.begin();
+		return result;
+	}
+
+	/**
+	 * Ends and commits this event.
+	 *
+	 * @param theGuilds is the number of guilds read or written.
+	 * @param theBytes is the size of the file.
+	 * @param theSuccess is whether the file was read or written.
+	 */
+	public void completed(final int theGuilds, final long theBytes,
+						  final boolean theSuccess) {
+		guilds = theGuilds;
+		bytes = theBytes;
+		success = theSuccess;
+		commit();
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.profiling;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * ProfileAnalyzer.java summarizes a flight recording dumped by the
+ * "profile_dump" command. Every event of Stream Bot is grouped by its
+ * path, such as "command:set_default_channel", "stream:NOTIFY",
+ * "preferences:save" or "send:message", and garbage collections are
+ * grouped by collector, so the time of each can be compared. For each
+ * path it prints the number of events and the median, 99th percentile
+ * and longest time taken, the median time spent waiting in the pipeline
+ * first, and the bytes read or written.
+ * <p>
+ * Usage: ProfileAnalyzer file.jfr
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class ProfileAnalyzer {
+	/**
+	 * The number of nanoseconds in a millisecond.
+	 */
+	private static final double MILLI = 1000000.0;
+
+	/**
+	 * The main method of the analyzer.
+	 *
+	 * @param theArgs is the recording file.
+	 * @throws IOException if the recording could not be read.
+	 */
+	public static void main(final String[] theArgs) throws IOException {
+		if (theArgs.length != 1) {
+			System.err.println("Usage: ProfileAnalyzer file.jfr");
+			return;
+		}
+
+		final Map<String, Path> paths = new TreeMap<String, Path>();
+		for (final RecordedEvent event: RecordingFile.readAllEvents(
+				Paths.get(theArgs[0]))) {
+			final String name = event.getEventType().getName();
+			long duration = event.getDuration().toNanos();
+			String key = null;
+
+			if ("streambot.Command".equals(name)) {
+				key = "command:" + event.getString("command");
+			} else if ("streambot.Stream".equals(name)) {
+				key = "stream:" + event.getString("route");
+			} else if ("streambot.Preferences".equals(name)) {
+				key = "preferences:" + event.getString("operation");
+			} else if ("streambot.Send".equals(name)) {
+				key = "send:" + event.getString("kind")
+					  + (event.getBoolean("success") ? "" : " (failed)");
+			} else if ("jdk.GarbageCollection".equals(name)) {
+				key = "gc:" + event.getString("name");
+				duration = event.getDuration("sumOfPauses").toNanos();
+			}
+
+			if (key != null) {
+				Path path = paths.get(key);
+				if (path == null) {
+					path = new Path();
+					paths.put(key, path);
+				}
+				path.myDurations.add(duration);
+				if (event.hasField("queued")) {
+					path.myQueued.add(event.getLong("queued"));
+				}
+				if (event.hasField("bytes")) {
+					path.myBytes += event.getLong("bytes");
+				}
+			}
+		}
+
+		System.out.printf("%-36s %8s %10s %10s %10s %10s %12s%n", "path",
+						  "count", "p50 ms", "p99 ms", "max ms",
+						  "queued ms", "bytes");
+		for (final Map.Entry<String, Path> entry: paths.entrySet()) {
+			final Path path = entry.getValue();
+			Collections.sort(path.myDurations);
+			Collections.sort(path.myQueued);
+			System.out.printf("%-36s %8d %10.2f %10.2f %10.2f %10s %12s%n",
+					entry.getKey(), path.myDurations.size(),
+					percentile(path.myDurations, 0.5) / MILLI,
+					percentile(path.myDurations, 0.99) / MILLI,
+					percentile(path.myDurations, 1) / MILLI,
+					path.myQueued.isEmpty() ? "-" : String.format("%.2f",
+							percentile(path.myQueued, 0.5) / MILLI),
+					path.myBytes == 0 ? "-" : Long.toString(path.myBytes));
+		}
+	}
+
+	/**
+	 * Returns the value at theFraction of theSorted values.
+	 *
+	 * @param theSorted are values sorted in ascending order.
+	 * @param theFraction is the percentile as a fraction.
+	 * @return the value at the percentile, or 0 if there are none.
+	 */
+	private static long percentile(final List<Long> theSorted,
+								   final double theFraction) {
+		long result = 0;
+
+		if (!theSorted.isEmpty()) {
+			final int index = (int) Math.ceil(theSorted.size() * theFraction);
+			result = theSorted.get(Math.max(0, Math.min(index,
+					theSorted.size()) - 1));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Path.java holds the events of one path.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private static final class Path {
+		/**
+		 * The time in nanoseconds each event took.
+		 */
+		private final List<Long> myDurations = new ArrayList<Long>();
+
+		/**
+		 * The time in nanoseconds each event waited in the pipeline.
+		 */
+		private final List<Long> myQueued = new ArrayList<Long>();
+
+		/**
+		 * The total bytes read or written.
+		 */
+		private long myBytes;
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.profiling;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import bot.discord.StreamBot.util.Configuration;
+import bot.discord.StreamBot.util.References;
+import jdk.jfr.Recording;
+
+/**
+ * Profiler.java runs a flight recording for as long as Stream Bot runs,
+ * with the JDK's default low overhead settings and Stream Bot's own
+ * events. Only the most recent events are kept, up to the age and size
+ * set in Configuration, so the recording can be dumped to a file whenever
+ * Stream Bot lags to see where the time went.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class Profiler {
+	/**
+	 * The name of the recording.
+	 */
+	private static final String NAME = "streambot";
+
+	/**
+	 * The format of the time in the names of dump files.
+	 */
+	private static final DateTimeFormatter DUMP_TIME =
+			DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+	/**
+	 * The number of bytes in a megabyte.
+	 */
+	private static final long MEGABYTE = 1024 * 1024;
+
+	/**
+	 * The always-on recording, or null if it is not running.
+	 */
+	private static volatile Recording ourRecording;
+
+	/**
+	 * Starts the always-on recording, unless profiling is turned off or it
+	 * is already running. Returns false if the recording could not be
+	 * started.
+	 *
+	 * @return whether the recording is running.
+	 */
+	public static synchronized boolean start() {
+		if (ourRecording == null && Configuration.get().isProfilingEnabled()) {
+			try {
+				final Recording recording = new Recording(
+						jdk.jfr.Configuration.getConfiguration("default"));
+				recording.setName(NAME);
+				recording.setToDisk(true);
+				recording.enable(CommandEvent.class);
+				recording.enable(StreamEvent.class);
+				recording.enable(PreferencesEvent.class);
+				recording.enable(SendEvent.class);
+
+				// Applies changes to the limits as they are made.
+				Configuration.addListener(theConfiguration -> {
+					recording.setMaxAge(Duration.ofMinutes(
+							theConfiguration.getProfilingMaxAgeMinutes()));
+					recording.setMaxSize(
+							theConfiguration.getProfilingMaxSizeMB() * MEGABYTE);
+				});
+
+				recording.start();
+				ourRecording = recording;
+			} catch (final IOException | ParseException ex) {
+				ex.printStackTrace();
+			}
+		}
+
+		return ourRecording != null;
+	}
+
+	/**
+	 * Writes the events kept by the always-on recording to a new file in
+	 * the profiling directory, then deletes the oldest dumps beyond
+	 * References.PROFILING_DUMPS. Returns null if the recording is not
+	 * running.
+	 *
+	 * @return the file written, or null.
+	 * @throws IOException if the file could not be written.
+	 */
+	public static synchronized Path dump() throws IOException {
+		final Recording recording = ourRecording;
+		Path result = null;
+
+		if (recording != null) {
+			final Path directory = Paths.get(
+					Configuration.get().getProfilingDirectory());
+			Files.createDirectories(directory);
+			result = directory.resolve(NAME + "-"
+					+ LocalDateTime.now().format(DUMP_TIME) + ".jfr");
+			recording.dump(result);
+			prune(directory);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Deletes the oldest dumps in theDirectory so that no more than
+	 * References.PROFILING_DUMPS are kept. The names of dumps sort by the
+	 * time they were written.
+	 *
+	 * @param theDirectory is the directory dumps are written to.
+	 * @throws IOException if the directory could not be read.
+	 */
+	private static void prune(final Path theDirectory) throws IOException {
+		final List<Path> dumps = new ArrayList<Path>();
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(
+				theDirectory, NAME + "-*.jfr")) {
+			for (final Path dump: stream) {
+				dumps.add(dump);
+			}
+		}
+
+		Collections.sort(dumps);
+		for (int i = 0; i < dumps.size() - References.PROFILING_DUMPS; i++) {
+			Files.deleteIfExists(dumps.get(i));
+		}
+	}
+}
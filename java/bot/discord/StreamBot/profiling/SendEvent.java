@@ -0,0 +1,72 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * SendEvent.java is a flight recorder event for one message sent or
+ * edited by Stream Bot. It begins when the request is queued with JDA and
+ * ends when JDA reports it completed or failed, so its duration includes
+ * the time spent waiting on Discord's rate limits.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+@Name("streambot.Send")
+@Label("Send")
+@Category("StreamBot")
+@Description("A message sent or edited by Stream Bot")
+public final class SendEvent extends jdk.jfr.Event {
+	/**
+	 * The kind of request, such as "message" or "board_edit".
+	 */
+	@Label("Kind")
+	private String kind;
+
+	/**
+	 * The ID of the guild.
+	 */
+	@Label("Guild ID")
+	private long guildID;
+
+	/**
+	 * Whether the request succeeded.
+	 */
+	@Label("Success")
+	private boolean success;
+
+	/**
+	 * Begins a SendEvent for a request of theKind to the guild with the ID
+	 * theGuildID. Call this just before queueing the request.
+	 *
+	 * @param theKind is the kind of request.
+	 * @param theGuildID is the ID of the guild.
+	 * @return the started event.
+	 */
+	public static SendEvent queued(final String theKind,
+								   final long theGuildID) {
+		final SendEvent result = new SendEvent();
+		result.kind = theKind;
+		result.guildID = theGuildID;
+		result.begin();
+		return result;
+	}
+
+	/**
+	 * Ends and commits this event. Call this from the callback of the
+	 * request.
+	 *
+	 * @param theSuccess is whether the request succeeded.
+	 */
+	public void completed(final boolean theSuccess) {
+		success = theSuccess;
+		commit();
+	}
+}
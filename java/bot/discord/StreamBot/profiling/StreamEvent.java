@@ -0,0 +1,68 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * StreamEvent.java is a flight recorder event for one stream start or end
+ * handled by the dispatch stage of the pipeline, whether it was sent as a
+ * notification, added to a digest or put on a live board. Its duration is
+ * the time taken to handle it, and the time it waited in the pipeline is
+ * recorded with it.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+@Name("streambot.Stream")
+@Label("Stream")
+@Category("StreamBot")
+@Description("A stream start or end handled by Stream Bot")
+public final class StreamEvent extends jdk.jfr.Event {
+	/**
+	 * How the stream was handled, such as NOTIFY or DIGEST.
+	 */
+	@Label("Route")
+	private String route;
+
+	/**
+	 * The ID of the guild.
+	 */
+	@Label("Guild ID")
+	private long guildID;
+
+	/**
+	 * The time in nanoseconds from publishing the game change to handling
+	 * it.
+	 */
+	@Label("Queued")
+	@Timespan(Timespan.NANOSECONDS)
+	private long queued;
+
+	/**
+	 * Begins a StreamEvent for the guild with the ID theGuildID, published into
+	 * the pipeline at thePublished. Call commit() once it is handled.
+	 *
+	 * @param theRoute is how the stream was handled.
+	 * @param theGuildID is the ID of the guild.
+	 * @param thePublished is the time in nanoseconds it was published.
+	 * @return the started event.
+	 */
+	public static StreamEvent started(final String theRoute,
+									  final long theGuildID,
+									  final long thePublished) {
+		final StreamEvent result = new StreamEvent();
+		result.route = theRoute;
+		result.guildID = theGuildID;
+		result.queued = System.nanoTime() - thePublished;
+		result.begin();
+		return result;
+	}
+}
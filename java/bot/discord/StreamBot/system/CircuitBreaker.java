@@ -0,0 +1,299 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.system;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CircuitBreaker.java tracks failures of outbound requests for each
+ * target, such as a text channel or a guild. Once a target has failed
+ * too many times in a row its breaker opens and requests to that target
+ * are refused until a cool down has passed. After the cool down a single
+ * probe request is allowed through (half-open); if it succeeds the breaker
+ * closes again, otherwise it stays open for another cool down. Breakers
+ * are forgotten once their target succeeds again or has not failed for
+ * a few cool downs, such as a deleted channel or a guild Stream Bot left.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class CircuitBreaker {
+	/**
+	 * The states a breaker for a single target can be in.
+	 */
+	public enum State {
+		/** Requests are allowed through. */
+		CLOSED,
+		/** Requests are refused until the cool down has passed. */
+		OPEN,
+		/** A single probe request has been allowed through. */
+		HALF_OPEN
+	}
+
+	/**
+	 * The number of cool downs without a failure after which the breaker
+	 * of a target is forgotten.
+	 */
+	private static final int IDLE_COOL_DOWNS = 2;
+
+	/**
+	 * A map of each target key with the breaker for that target.
+	 */
+	private final Map<String, Breaker> myBreakers;
+
+	/**
+	 * The number of consecutive failures that opens a breaker.
+	 */
+	private volatile int myFailureThreshold;
+
+	/**
+	 * The time in milliseconds a breaker stays open before probing.
+	 */
+	private volatile long myOpenMillis;
+
+	/**
+	 * The number of times any breaker has opened.
+	 */
+	private final AtomicLong myTrips;
+
+	/**
+	 * The number of requests refused because a breaker was open.
+	 */
+	private final AtomicLong myRejections;
+
+	/**
+	 * The constructor of a CircuitBreaker.
+	 *
+	 * @param theFailureThreshold is the number of consecutive failures
+	 * that opens a breaker.
+	 * @param theOpenMillis is the time in milliseconds a breaker stays
+	 * open before a probe request is allowed.
+	 */
+	public CircuitBreaker(final int theFailureThreshold,
+						  final long theOpenMillis) {
+		myBreakers = new ConcurrentHashMap<String, Breaker>();
+		myFailureThreshold = theFailureThreshold;
+		myOpenMillis = theOpenMillis;
+		myTrips = new AtomicLong();
+		myRejections = new AtomicLong();
+	}
+
+	/**
+	 * Changes the failure threshold and the cool down of every breaker.
+	 * Breakers that are already open keep their state.
+	 *
+	 * @param theFailureThreshold is the number of consecutive failures
+	 * that opens a breaker.
+	 * @param theOpenMillis is the time in milliseconds a breaker stays
+	 * open before a probe request is allowed.
+	 */
+	public void setLimits(final int theFailureThreshold,
+						  final long theOpenMillis) {
+		myFailureThreshold = theFailureThreshold;
+		myOpenMillis = theOpenMillis;
+	}
+
+	/**
+	 * Returns true if a request to theKey may be sent. If the breaker for
+	 * theKey is half-open, the caller that receives true is the probe and
+	 * must report the outcome with recordSuccess or recordFailure.
+	 *
+	 * @param theKey is the target the request is being sent to.
+	 * @return whether the request may be sent.
+	 */
+	public boolean allowRequest(final String theKey) {
+		final Breaker breaker = myBreakers.get(theKey);
+		boolean result = true;
+
+		if (breaker != null) {
+			result = breaker.allow(System.currentTimeMillis());
+			if (!result) {
+				myRejections.incrementAndGet();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Records that a request to theKey succeeded, closing its breaker.
+	 *
+	 * @param theKey is the target the request was sent to.
+	 */
+	public void recordSuccess(final String theKey) {
+		final Breaker breaker = myBreakers.get(theKey);
+
+		// Targets that never failed have no breaker to reset, and a closed
+		// breaker without failures is the same as none.
+		if (breaker != null) {
+			breaker.success();
+			myBreakers.remove(theKey, breaker);
+		}
+	}
+
+	/**
+	 * Records that a request to theKey failed. Opens the breaker for
+	 * theKey if the failure threshold was reached or if the failed
+	 * request was a probe.
+	 *
+	 * @param theKey is the target the request was sent to.
+	 */
+	public void recordFailure(final String theKey) {
+		final long now = System.currentTimeMillis();
+		Breaker breaker = myBreakers.get(theKey);
+		if (breaker == null) {
+			// New breakers are rare, so this is when old ones are swept.
+			evictIdle(now);
+			breaker = myBreakers.computeIfAbsent(theKey,
+					theNewKey -> new Breaker());
+		}
+
+		if (breaker.failure(now)) {
+			myTrips.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Forgets the breakers that have not had a failure for IDLE_COOL_DOWNS
+	 * cool downs at theNow. A target that is still failing starts over
+	 * with a closed breaker.
+	 *
+	 * @param theNow is the current time in milliseconds.
+	 */
+	private void evictIdle(final long theNow) {
+		final long idle = IDLE_COOL_DOWNS * myOpenMillis;
+		myBreakers.values().removeIf(theBreaker ->
+				theBreaker.getLastFailure() <= theNow - idle);
+	}
+
+	/**
+	 * Returns the state of the breaker for theKey.
+	 *
+	 * @param theKey is the target being checked.
+	 * @return the state of the breaker for theKey.
+	 */
+	public State getState(final String theKey) {
+		final Breaker breaker = myBreakers.get(theKey);
+		return breaker == null ? State.CLOSED : breaker.getState();
+	}
+
+	/**
+	 * Returns the number of times any breaker has opened.
+	 *
+	 * @return the number of times any breaker has opened.
+	 */
+	public long getTrips() {
+		return myTrips.get();
+	}
+
+	/**
+	 * Returns the number of requests refused because a breaker was open.
+	 *
+	 * @return the number of requests refused.
+	 */
+	public long getRejections() {
+		return myRejections.get();
+	}
+
+	/**
+	 * Breaker.java is the state of the breaker for a single target.
+	 * Methods are synchronized on the breaker so that only one probe
+	 * request is let through while half-open.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private final class Breaker {
+		/**
+		 * The current state of this breaker.
+		 */
+		private State myState = State.CLOSED;
+
+		/**
+		 * The number of consecutive failures.
+		 */
+		private int myFailures;
+
+		/**
+		 * The time in milliseconds this breaker last opened.
+		 */
+		private long myOpenedAt;
+
+		/**
+		 * The time in milliseconds of the last failure.
+		 */
+		private long myLastFailure;
+
+		/**
+		 * Returns true if a request may be sent at theNow. Moves an open
+		 * breaker whose cool down has passed to half-open.
+		 *
+		 * @param theNow is the current time in milliseconds.
+		 * @return whether a request may be sent.
+		 */
+		synchronized boolean allow(final long theNow) {
+			boolean result = myState == State.CLOSED;
+
+			if (myState == State.OPEN
+				&& theNow - myOpenedAt >= myOpenMillis) {
+				// Let a single probe through.
+				myState = State.HALF_OPEN;
+				result = true;
+			}
+
+			return result;
+		}
+
+		/**
+		 * Closes this breaker after a successful request.
+		 */
+		synchronized void success() {
+			myState = State.CLOSED;
+			myFailures = 0;
+		}
+
+		/**
+		 * Counts a failed request. Returns true if this breaker opened.
+		 *
+		 * @param theNow is the current time in milliseconds.
+		 * @return whether this breaker opened.
+		 */
+		synchronized boolean failure(final long theNow) {
+			myFailures++;
+			myLastFailure = theNow;
+			final boolean opened = myState == State.HALF_OPEN
+					|| (myState == State.CLOSED
+						&& myFailures >= myFailureThreshold);
+
+			if (opened) {
+				myState = State.OPEN;
+				myOpenedAt = theNow;
+			}
+
+			return opened;
+		}
+
+		/**
+		 * Returns the time in milliseconds of the last failure.
+		 *
+		 * @return the time of the last failure.
+		 */
+		synchronized long getLastFailure() {
+			return myLastFailure;
+		}
+
+		/**
+		 * Returns the current state of this breaker.
+		 *
+		 * @return the current state of this breaker.
+		 */
+		synchronized State getState() {
+			return myState;
+		}
+	}
+}
@@ -0,0 +1,335 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.system;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.SyncFailedException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * ClusterHarness.java checks cluster mode with several JVMs on one host.
+ * It starts a number of nodes in new JVMs that share a temporary
+ * directory, the way Stream Bot processes share the cluster directory.
+ * Each node takes shard leases with ShardLeases, then saves a number of
+ * new guilds to the shared Preferences while refreshing it, and reports
+ * how long each guild saved by another node took to reach it. The run
+ * fails if a shard was owned by two nodes or by none, or if a node never
+ * saw a guild saved by another node.
+ * <p>
+ * Usage: ClusterHarness [nodes] [shards] [rounds] [syncMillis]
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class ClusterHarness {
+	/**
+	 * The number of nodes by default.
+	 */
+	private static final int NODES = 3;
+
+	/**
+	 * The total number of shards by default.
+	 */
+	private static final int SHARDS = 8;
+
+	/**
+	 * The number of guilds each node saves by default.
+	 */
+	private static final int ROUNDS = 20;
+
+	/**
+	 * The time in milliseconds between refreshes of each node by default.
+	 */
+	private static final long SYNC_MILLIS = 100;
+
+	/**
+	 * The time in milliseconds between saves of each node.
+	 */
+	private static final long SAVE_MILLIS = 50;
+
+	/**
+	 * The time in milliseconds a node waits for the guilds of the others.
+	 */
+	private static final long TIMEOUT_MILLIS = 30 * 1000;
+
+	/**
+	 * The argument that runs a node instead of the harness.
+	 */
+	private static final String NODE = "--node";
+
+	/**
+	 * The main method of the harness.
+	 *
+	 * @param theArgs are the nodes, shards, rounds and sync interval, all
+	 * optional, or the arguments of a node.
+	 */
+	public static void main(final String[] theArgs) throws Exception {
+		if (theArgs.length > 0 && NODE.equals(theArgs[0])) {
+			System.exit(node(Integer.parseInt(theArgs[1]),
+							 new File(theArgs[2]),
+							 Integer.parseInt(theArgs[3]),
+							 Integer.parseInt(theArgs[4]),
+							 Integer.parseInt(theArgs[5]),
+							 Long.parseLong(theArgs[6])));
+		}
+
+		final int nodes = argument(theArgs, 0, NODES);
+		final int shards = argument(theArgs, 1, SHARDS);
+		final int rounds = argument(theArgs, 2, ROUNDS);
+		final long sync = argument(theArgs, 3, (int) SYNC_MILLIS);
+		final File directory = Files.createTempDirectory("streambot")
+				.toFile();
+
+		try {
+			System.exit(run(directory, nodes, shards, rounds, sync) ? 0 : 1);
+		} finally {
+			for (final File file: directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Starts theNodes nodes sharing theDirectory, waits for each to finish
+	 * and prints what they reported. Returns true if every check passed.
+	 *
+	 * @param theDirectory is the directory shared by the nodes.
+	 * @param theNodes is the number of nodes.
+	 * @param theShards is the total number of shards.
+	 * @param theRounds is the number of guilds each node saves.
+	 * @param theSyncMillis is the time between refreshes of each node.
+	 * @return whether every check passed.
+	 */
+	private static boolean run(final File theDirectory, final int theNodes,
+							   final int theShards, final int theRounds,
+							   final long theSyncMillis)
+							   throws IOException, InterruptedException {
+		final List<Process> processes = new ArrayList<Process>();
+		final List<List<String>> reports = new ArrayList<List<String>>();
+
+		for (int i = 0; i < theNodes; i++) {
+			final List<String> command = new ArrayList<String>();
+			command.add(System.getProperty("java.home") + File.separator
+						+ "bin" + File.separator + "java");
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(ClusterHarness.class.getName());
+			command.add(NODE);
+			command.add(Integer.toString(i));
+			command.add(theDirectory.getPath());
+			command.add(Integer.toString(theNodes));
+			command.add(Integer.toString(theShards));
+			command.add(Integer.toString(theRounds));
+			command.add(Long.toString(theSyncMillis));
+			processes.add(new ProcessBuilder(command)
+					.redirectError(ProcessBuilder.Redirect.INHERIT).start());
+		}
+
+		// Reads each report until the node is done, while all hold leases.
+		for (final Process process: processes) {
+			final List<String> report = new ArrayList<String>();
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(process.getInputStream(),
+										  StandardCharsets.UTF_8));
+			String line;
+			while ((line = reader.readLine()) != null
+				   && !line.equals("done")) {
+				report.add(line);
+			}
+			reports.add(report);
+		}
+
+		// Lets every node release its leases and exit.
+		for (final Process process: processes) {
+			process.getOutputStream().close();
+			process.waitFor();
+		}
+
+		final Map<Integer, Integer> owners = new HashMap<Integer, Integer>();
+		boolean result = true;
+		for (int i = 0; i < theNodes; i++) {
+			for (final String line: reports.get(i)) {
+				System.out.println("node " + i + ": " + line);
+				final String[] words = line.split(" ");
+				if ("shards".equals(words[0]) && words.length > 1) {
+					for (final String shard: words[1].split(",")) {
+						if (owners.put(Integer.parseInt(shard), i) != null) {
+							System.out.println("shard " + shard
+											   + " owned twice");
+							result = false;
+						}
+					}
+				} else if ("missing".equals(words[0])) {
+					result = false;
+				}
+			}
+		}
+		if (owners.size() != theShards) {
+			System.out.println("shards not owned: " + (theShards
+							   - owners.size()));
+			result = false;
+		}
+
+		System.out.println(result ? "OK" : "FAILED");
+		return result;
+	}
+
+	/**
+	 * Runs one node. Takes up to a fair share of the shards, then saves
+	 * theRounds guilds named after theNode with the time they were saved
+	 * as their channel, refreshing every theSyncMillis, until it has seen
+	 * the guilds of every node. Holds its leases until standard input is
+	 * closed. Returns the exit status of the node.
+	 *
+	 * @param theNode is the number of this node.
+	 * @param theDirectory is the directory shared by the nodes.
+	 * @param theNodes is the number of nodes.
+	 * @param theShards is the total number of shards.
+	 * @param theRounds is the number of guilds each node saves.
+	 * @param theSyncMillis is the time between refreshes.
+	 * @return the exit status of the node.
+	 */
+	private static int node(final int theNode, final File theDirectory,
+							final int theNodes, final int theShards,
+							final int theRounds, final long theSyncMillis)
+							throws IOException, InterruptedException {
+		final ShardLeases leases = new ShardLeases(theDirectory,
+				"node-" + theNode, theShards);
+		final TreeSet<Integer> owned = new TreeSet<Integer>(leases.acquire(
+				(theShards + theNodes - 1) / theNodes));
+		System.out.println("shards " + join(owned));
+
+		final Preferences pref = new Preferences(
+				new File(theDirectory, "preferences.txt").getPath());
+		pref.init();
+
+		final List<Long> delays = new ArrayList<Long>();
+		final Set<String> seen = new HashSet<String>();
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		int saved = 0;
+		long lastSave = 0;
+		long lastSync = 0;
+		int failures = 0;
+
+		while (seen.size() < theNodes * theRounds
+			   && System.currentTimeMillis() < deadline) {
+			final long now = System.currentTimeMillis();
+			if (saved < theRounds && now - lastSave >= SAVE_MILLIS) {
+				try {
+					pref.setDefaultChannel("node-" + theNode + "-" + saved,
+										   Long.toString(now));
+				} catch (final SyncFailedException ex) {
+					failures++;
+				}
+				saved++;
+				lastSave = now;
+			}
+			if (now - lastSync >= theSyncMillis) {
+				pref.refresh();
+				lastSync = now;
+			}
+
+			// Records how long each new guild took to arrive.
+			for (int node = 0; node < theNodes; node++) {
+				for (int round = 0; round < theRounds; round++) {
+					final String guild = "node-" + node + "-" + round;
+					final String channel = pref.findDefaultChannel(guild);
+					if (channel != null && seen.add(guild)) {
+						if (node != theNode) {
+							delays.add(System.currentTimeMillis()
+									   - Long.parseLong(channel));
+						}
+					}
+				}
+			}
+			Thread.sleep(1);
+		}
+
+		Collections.sort(delays);
+		System.out.println("seen " + seen.size() + " guilds, delay p50 "
+						   + percentile(delays, 0.5) + " ms, max "
+						   + percentile(delays, 1) + " ms, failed saves "
+						   + failures);
+		if (seen.size() < theNodes * theRounds) {
+			System.out.println("missing " + (theNodes * theRounds
+							   - seen.size()) + " guilds");
+		}
+		System.out.println("done");
+		System.out.flush();
+
+		// Holds the leases until every node has reported its shards.
+		while (System.in.read() >= 0) {
+			continue;
+		}
+		leases.releaseAll();
+		return 0;
+	}
+
+	/**
+	 * Returns the value at theFraction of theSorted values.
+	 *
+	 * @param theSorted are values sorted in ascending order.
+	 * @param theFraction is the percentile as a fraction.
+	 * @return the value at the percentile, or 0 if there are none.
+	 */
+	private static long percentile(final List<Long> theSorted,
+								   final double theFraction) {
+		long result = 0;
+
+		if (!theSorted.isEmpty()) {
+			final int index = (int) Math.ceil(theSorted.size() * theFraction);
+			result = theSorted.get(Math.max(0, Math.min(index,
+					theSorted.size()) - 1));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns theValues separated by commas.
+	 *
+	 * @param theValues are the values to join.
+	 * @return the joined values.
+	 */
+	private static String join(final Iterable<Integer> theValues) {
+		final StringBuilder builder = new StringBuilder();
+		for (final int value: theValues) {
+			if (builder.length() > 0) {
+				builder.append(',');
+			}
+			builder.append(value);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Returns the argument at theIndex as a number, or theDefault if there
+	 * is none.
+	 *
+	 * @param theArgs are the arguments of the harness.
+	 * @param theIndex is the index of the argument.
+	 * @param theDefault is the value if the argument is missing.
+	 * @return the value of the argument.
+	 */
+	private static int argument(final String[] theArgs, final int theIndex,
+								final int theDefault) {
+		return theArgs.length > theIndex ? Integer.parseInt(theArgs[theIndex])
+				: theDefault;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.system;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import bot.discord.StreamBot.util.Configuration;
+import bot.discord.StreamBot.util.RateLimit;
+
+/**
+ * CommandThrottle.java decides whether a command may run, so that a user
+ * or guild spamming commands can not use up Stream Bot's requests to
+ * Discord. Each command has a limit per user and a limit per guild, read
+ * from Configuration. A user over the limit is warned at most once per
+ * period of their limit; any other commands over the limit are dropped
+ * quietly. The number of dropped commands is counted for each command.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class CommandThrottle {
+	/**
+	 * What should be done with a command.
+	 */
+	public enum Result {
+		/** The command may run. */
+		ALLOWED,
+		/** The command should be dropped and the user warned. */
+		WARN,
+		/** The command should be dropped quietly. */
+		DROPPED
+	}
+
+	/**
+	 * The token buckets of each user, guild and warning.
+	 */
+	private final RateLimiter myLimiter;
+
+	/**
+	 * A map of each command with the number of times it was dropped.
+	 */
+	private final Map<String, LongAdder> myDropped;
+
+	/**
+	 * A map of the period in seconds of each user limit with the limit of
+	 * one warning in that period.
+	 */
+	private final Map<Long, RateLimit> myWarnLimits;
+
+	/**
+	 * The default constructor of a CommandThrottle.
+	 */
+	public CommandThrottle() {
+		myLimiter = new RateLimiter();
+		myDropped = new ConcurrentHashMap<String, LongAdder>();
+		myWarnLimits = new ConcurrentHashMap<Long, RateLimit>();
+	}
+
+	/**
+	 * Returns what should be done with theCommand used by the user with
+	 * the ID theUserID in the guild with the ID theGuildID.
+	 *
+	 * @param theCommand is the name of the command.
+	 * @param theUserID is the ID of the user.
+	 * @param theGuildID is the ID of the guild, or null for direct
+	 * messages.
+	 * @return whether the command may run.
+	 */
+	public Result check(final String theCommand, final String theUserID,
+						final String theGuildID) {
+		final Configuration config = Configuration.get();
+		final RateLimit userLimit = config.getUserLimit(theCommand);
+		final String userKey = "u:" + theUserID + ":" + theCommand;
+		boolean allowed = myLimiter.tryAcquire(userKey, userLimit);
+		Result result = Result.ALLOWED;
+
+		if (allowed && theGuildID != null
+			&& !myLimiter.tryAcquire("g:" + theGuildID + ":" + theCommand,
+									 config.getGuildLimit(theCommand))) {
+			// The command will not run, so the user keeps their token.
+			myLimiter.release(userKey, userLimit);
+			allowed = false;
+		}
+
+		if (!allowed) {
+			// Warns once for each period of the user's limit.
+			final RateLimit warnLimit = myWarnLimits.computeIfAbsent(
+					userLimit.getPeriodNanos() / 1000000000L,
+					theSeconds -> new RateLimit(1, theSeconds));
+			result = myLimiter.tryAcquire("w:" + theUserID, warnLimit)
+					? Result.WARN : Result.DROPPED;
+			myDropped.computeIfAbsent(theCommand, theKey -> new LongAdder())
+					 .increment();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of times each command was dropped, sorted by
+	 * command.
+	 *
+	 * @return a map of each command with the number of times it was
+	 * dropped.
+	 */
+	public Map<String, Long> getDroppedCounts() {
+		final Map<String, Long> result = new TreeMap<String, Long>();
+		for (final Map.Entry<String, LongAdder> entry: myDropped.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().sum());
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets the users and guilds that are no longer limited. Should be
+	 * called periodically.
+	 *
+	 * @return the number of users and guilds still limited.
+	 */
+	public int sweep() {
+		return myLimiter.sweep();
+	}
+}
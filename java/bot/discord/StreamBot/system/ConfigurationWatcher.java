@@ -0,0 +1,206 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.system;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bot.discord.StreamBot.util.Configuration;
+
+/**
+ * ConfigurationWatcher.java loads the configuration of Stream Bot from a
+ * properties file and the environment, and reloads it whenever the file
+ * changes. Environment variables take precedence over the file; the
+ * variable for a key is "STREAMBOT_" followed by the key in upper case
+ * with dots replaced by underscores, such as STREAMBOT_COMMAND_PREFIX. The
+ * token may also be given as BOT_TOKEN. The cluster variables used before
+ * the configuration file was added, such as STREAMBOT_SHARD_TOTAL, are
+ * still read with a warning. If a reloaded file is invalid the current
+ * configuration is kept.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class ConfigurationWatcher implements Runnable {
+	/**
+	 * The prefix of environment variables for configuration keys.
+	 */
+	private static final String ENVIRONMENT_PREFIX = "STREAMBOT_";
+
+	/**
+	 * The environment variable that may also hold the token.
+	 */
+	private static final String TOKEN_VARIABLE = "BOT_TOKEN";
+
+	/**
+	 * A map of each environment variable used for cluster mode before the
+	 * configuration file was added with the key it now sets.
+	 */
+	private static final Map<String, String> OLD_VARIABLES;
+	static {
+		final Map<String, String> variables =
+				new LinkedHashMap<String, String>();
+		variables.put("STREAMBOT_NODE_ID", Configuration.NODE_ID);
+		variables.put("STREAMBOT_SHARD_TOTAL", Configuration.SHARD_TOTAL);
+		variables.put("STREAMBOT_MAX_SHARDS", Configuration.MAX_SHARDS);
+		variables.put("STREAMBOT_SYNC_MILLIS",
+					  Configuration.CLUSTER_SYNC_MILLIS);
+		OLD_VARIABLES = Collections.unmodifiableMap(variables);
+	}
+
+	/**
+	 * The old environment variables that have already been warned about,
+	 * so each warning is printed once rather than on every reload.
+	 */
+	private static final Set<String> WARNED = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The configuration file.
+	 */
+	private final Path myFile;
+
+	/**
+	 * The constructor of a ConfigurationWatcher.
+	 *
+	 * @param theFile is the location of the configuration file.
+	 */
+	public ConfigurationWatcher(final String theFile) {
+		myFile = Paths.get(theFile).toAbsolutePath();
+	}
+
+	/**
+	 * Reads the configuration file, if it exists, and the environment and
+	 * sets the result as the current configuration. Returns false and keeps
+	 * the current configuration if the file could not be read or has an
+	 * invalid setting.
+	 *
+	 * @return whether a new configuration was set.
+	 */
+	public boolean reload() {
+		boolean result = false;
+
+		try {
+			Configuration.set(new Configuration(read()));
+			result = true;
+		} catch (final IOException | IllegalArgumentException ex) {
+			ex.printStackTrace();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Starts a background thread that reloads the configuration whenever
+	 * the configuration file is created or changed.
+	 */
+	public void start() {
+		final Thread thread = new Thread(this, "configuration-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Watches the directory of the configuration file and reloads the
+	 * configuration when the file is changed. Runs until interrupted.
+	 */
+	@Override
+	public void run() {
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			myFile.getParent().register(watcher,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+
+			while (!Thread.currentThread().isInterrupted()) {
+				final WatchKey key = watcher.take();
+				boolean changed = false;
+				for (final WatchEvent<?> event: key.pollEvents()) {
+					if (myFile.getFileName().equals(event.context())) {
+						changed = true;
+					}
+				}
+
+				// Reloads once for any number of events on the file.
+				if (changed) {
+					reload();
+				}
+				key.reset();
+			}
+		} catch (final IOException ex) {
+			ex.printStackTrace();
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads the settings from the configuration file and the environment.
+	 *
+	 * @return the settings that were read.
+	 * @throws IOException if the file exists but could not be read.
+	 */
+	private Properties read() throws IOException {
+		final Properties result = new Properties();
+
+		if (Files.exists(myFile)) {
+			try (Reader reader = Files.newBufferedReader(myFile,
+					StandardCharsets.UTF_8)) {
+				result.load(reader);
+			}
+		}
+
+		if (System.getenv(TOKEN_VARIABLE) != null) {
+			result.setProperty(Configuration.TOKEN,
+							   System.getenv(TOKEN_VARIABLE));
+		}
+		// Old names apply unless the file or the new name sets the key.
+		for (final Map.Entry<String, String> entry: OLD_VARIABLES.entrySet()) {
+			final String value = System.getenv(entry.getKey());
+			if (value != null && WARNED.add(entry.getKey())) {
+				System.err.println(entry.getKey() + " is deprecated, use "
+						+ variable(entry.getValue()) + " or "
+						+ entry.getValue() + " in the configuration file.");
+			}
+			if (value != null && !result.containsKey(entry.getValue())) {
+				result.setProperty(entry.getValue(), value);
+			}
+		}
+		for (final String key: Configuration.KEYS) {
+			final String value = System.getenv(variable(key));
+			if (value != null) {
+				result.setProperty(key, value);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the name of the environment variable for theKey.
+	 *
+	 * @param theKey is a configuration key.
+	 * @return the environment variable that sets theKey.
+	 */
+	private static String variable(final String theKey) {
+		return ENVIRONMENT_PREFIX
+			   + theKey.replace('.', '_').toUpperCase(Locale.ROOT);
+	}
+}
@@ -5,14 +5,27 @@
 
 package bot.discord.StreamBot.system;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
 import java.io.SyncFailedException;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bot.discord.StreamBot.profiling.PreferencesEvent;
+import bot.discord.StreamBot.util.References;
 
 /**
  * Preferences.java is a class used for storing and accessing system
@@ -20,6 +33,13 @@ import java.util.Scanner;
  * An instance of the preferences class should be created and then
  * initialized using init() before Stream Bot is constructed so that the
  * information can be accessed on start-up.
+ * <p>
+ * The file may be shared by several Stream Bot processes. The first line
+ * of the file holds a version number that is increased on every save.
+ * Saves are done while holding a lock on a companion ".lock" file, and if
+ * another process saved a newer version since this one last read the
+ * file, its entries are merged in before writing. Other processes pick up
+ * the change the next time they call refresh().
  *  
  * @author Tucker Stewart
  * @version 1.0
@@ -36,16 +56,64 @@ public final class Preferences {
 	private static final String DELIMITER = ":";
 	
 	/**
-	 * The location of the file that contains system preferences.
+	 * The prefix of the first line of the file, followed by the version.
+	 */
+	private static final String VERSION_PREFIX = "#version" + DELIMITER;
+	
+	/**
+	 * Written in place of the ID of the live board message if there is
+	 * none.
 	 */
-	private static final String PREFERENCES_FILE = "./src/main/java/bot/discord/StreamBot/system/preferences.txt";
+	private static final String NO_MESSAGE = "0";
+	
+	/**
+	 * The suffix of the file that is locked while saving.
+	 */
+	private static final String LOCK_SUFFIX = ".lock";
+	
+	/**
+	 * The suffix of the file that is written before replacing the file.
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	/**
+	 * The file that contains system preferences.
+	 */
+	private final File myFile;
+	
+	/**
+	 * The names of the guilds changed by this process since the last save.
+	 */
+	private final Set<String> myChanged;
+	
+	/**
+	 * The version of the file that myPreferences was last synced with.
+	 */
+	private long myVersion;
+	
+	/**
+	 * Whether the file has been read since this object was constructed.
+	 */
+	private volatile boolean myLoaded;
 	
 	/**
 	 * The default constructor of a Preferences object. Instantiates the
 	 * Hash Map to store the system preference information.
 	 */
 	public Preferences() {
-		myPreferences = new HashMap<String, GuildPreferences>();
+		this(References.PREFERENCES_FILE);
+	}
+	
+	/**
+	 * The constructor of a Preferences object that is stored in theFile
+	 * instead of the default location.
+	 * 
+	 * @param theFile is the location of the file for system preferences.
+	 */
+	public Preferences(final String theFile) {
+		myPreferences = new ConcurrentHashMap<String, GuildPreferences>();
+		myFile = new File(theFile);
+		myChanged = ConcurrentHashMap.newKeySet();
 	}
 	
 	/**
@@ -57,55 +125,80 @@ public final class Preferences {
 	 * 
 	 * @return whether myPreferences was successfully initialized.
 	 */
-	public boolean init() {
-		// Scanner for reading the file for guild system preferences.
-		Scanner fileReader = null;
-		// Tells whether the file was open or not.
-		boolean fileFound = false;
-		// Tells whether the map was successfully initialized.
-		boolean result = false;
+	public synchronized boolean init() {
+		final PreferencesEvent record = PreferencesEvent.started("load");
+		// The entries read from the file.
+		final Map<String, GuildPreferences> contents =
+				new HashMap<String, GuildPreferences>();
+		// The version of the file, or -1 if it could not be read.
+		final long version = readContents(contents);
+		record.completed(contents.size(), myFile.length(), version >= 0);
 		
-		// Attempts to open the file.
-		try {
-			fileReader = new Scanner(new File(PREFERENCES_FILE));
-			fileFound = true;
-		} catch (final FileNotFoundException ex) {
-			ex.printStackTrace();
+		// If the file was read then fill the myPreferences Hash Map.
+		if (version >= 0) {
+			myPreferences.putAll(contents);
+			myVersion = version;
+			myLoaded = true;
 		}
 		
+		// Return true if the map was successfully initialized.
+		return version >= 0;
+	}
+	
+	/**
+	 * Reads the file again if another process has saved a newer version
+	 * of it since this process last read or wrote it. Returns true if
+	 * myPreferences was updated.
+	 * 
+	 * @return whether changes made by another process were loaded.
+	 */
+	public synchronized boolean refresh() {
+		boolean result = false;
 		
-		
-		/* If the file was opened then continue to read the file and fill
-		   the myPreferences Hash Map. */
-		if (fileFound) {
-			while (fileReader.hasNextLine()) {
-				final String[] pref = fileReader.nextLine().split(DELIMITER);
-				myPreferences.put(pref[0],
-						        new GuildPreferences(pref[0], pref[1]));
+		if (readVersion() > myVersion) {
+			final PreferencesEvent record =
+					PreferencesEvent.started("refresh");
+			final Map<String, GuildPreferences> contents =
+					new HashMap<String, GuildPreferences>();
+			final long version = readContents(contents);
+			record.completed(contents.size(), myFile.length(), version >= 0);
+			if (version > myVersion) {
+				merge(contents, version);
+				myLoaded = true;
+				result = true;
 			}
-			result = true;
 		}
 		
-		// Return true if the map was successfully initialized.
 		return result;
 	}
 	
+	/**
+	 * Returns true if the file has been read by init() or refresh(). Until
+	 * it has, the entries are not the ones saved and should not be used to
+	 * decide which entries to remove.
+	 * 
+	 * @return whether the file has been read.
+	 */
+	public boolean isLoaded() {
+		return myLoaded;
+	}
+	
 	/**
 	 * Adds an entry for a new guild. Sets the system preferences with some
-	 * default information. This should be could when Stream Bot joins a
-	 * new guild or if an IllegalArgumentException is thrown by any of the
-	 * accessor or mutator methods
+	 * default information. This should be called when Stream Bot joins a
+	 * new guild or if findDefaultChannel finds no entry for a guild.
 	 * 
 	 * @param theGuild is the name of the guild this entry pertains to.
 	 * @param theDefaultChannelID is the ID of the default channel.
 	 * @throws SyncFailedException if changes were unable to be saved to
 	 * "preferences.txt"
 	 */
-	public void addGuild(final String theGuild,
+	public synchronized void addGuild(final String theGuild,
 			             final String theDefaultChannelID)
 			             throws SyncFailedException {
 		myPreferences.put(theGuild, new GuildPreferences(theGuild,
 				        theDefaultChannelID));
+		myChanged.add(theGuild);
 
 		// Save the contents again after adding the entry.
 		try {
@@ -117,30 +210,26 @@ public final class Preferences {
 	}
 	
 	/**
-	 * Sets the Default Channel of this guild. Saves the results to text
-	 * file afterward. Only call this method if theGuild already exists
-	 * as a key in myPreferences, otherwise an IllegalArgumentException.
-	 * If an IllegalArgumentException is thrown, then in the catch block
-	 * use addGuild to make an entry with some default information.
+	 * Sets the Default Channel of this guild, adding an entry for it with
+	 * default values if there is none. Saves the results to text file
+	 * afterward.
 	 * 
 	 * @param theGuild is the guild this setting pertains to.
 	 * @param theDefaultChannelID the ID of the new default channel.
-	 * @throws IllegalArgumentException if theGuild is not a key in
-	 * myPreferences.
 	 * @throws SyncFailedException if changes were unable to be saved to
 	 * "preferences.txt"
 	 */
-	public void setDefaultChannel(final String theGuild,
+	public synchronized void setDefaultChannel(final String theGuild,
 			                      final String theDefaultChannelID)
 			                      throws SyncFailedException {
-		/* Throws an exception if the wasn't a previous entry with the
-		   guild name theGuild. */
-		if (!myPreferences.containsKey(theGuild)) {
-			throw new IllegalArgumentException("Preferences does not have"
-											   + "a key with 'theGuild'.");
+		final GuildPreferences pref = myPreferences.get(theGuild);
+		if (pref == null) {
+			myPreferences.put(theGuild, new GuildPreferences(theGuild,
+					theDefaultChannelID));
+		} else {
+			pref.setDefaultChannelID(theDefaultChannelID);
 		}
-		
-		myPreferences.get(theGuild).setDefaultChannelID(theDefaultChannelID);
+		myChanged.add(theGuild);
 		
 		// Save the contents again after editing the entry.
 		try {
@@ -152,27 +241,182 @@ public final class Preferences {
 	}
 	
 	/**
-	 * Returns the ID of the Default Channel for this guild. Throws an
-	 * IllegalArguemntException if no such key, theGuild,
-	 * exists in myPreferences. This method should only be called if
-	 * an entry with theGuild exists in Preferences. If an
-	 * IllegalArgumentException is thrown, then in the catch block use
-	 * addGuild to make an entry with some default information.
+	 * Returns the ID of the Default Channel for this guild, or null if
+	 * there is no entry for theGuild.
 	 * 
 	 * @param theGuild is the guild you want the Channel ID of.
-	 * @return the Default Channel ID of theGuild.
-	 * @throws IllegalArgumentException if theGuild is not a key in
-	 * myPreferences.
+	 * @return the Default Channel ID of theGuild, or null.
+	 */
+	public String findDefaultChannel(final String theGuild) {
+		final GuildPreferences pref = myPreferences.get(theGuild);
+		return pref == null ? null : pref.getDefaultChannelID();
+	}
+	
+	/**
+	 * Brings the entries in line with theGuilds, the guilds Stream Bot is
+	 * connected to, and saves once if anything changed. Guilds without an
+	 * entry are added with the default channel they are mapped to, unless
+	 * it is null. If thePrune is true, entries of guilds not in theGuilds
+	 * are removed; it should only be true when theGuilds holds every
+	 * guild of every shard. Call this method when Stream Bot is ready.
+	 * 
+	 * @param theGuilds is a map of each connected guild with the ID of its
+	 * default channel, or null if it has none.
+	 * @param thePrune is whether entries of other guilds are removed.
+	 * @return the number of entries added or removed.
+	 * @throws SyncFailedException if changes were unable to be saved to
+	 * "preferences.txt"
 	 */
-	public String getDefaultChannel(final String theGuild) {
-		/* Throws an exception if the wasn't a previous entry with the
-		   guild name theGuild. */
-		if (!myPreferences.containsKey(theGuild)) {
-			throw new IllegalArgumentException("Preferences does not have"
-											   + "a key with 'theGuild'.");
+	public synchronized int reconcile(final Map<String, String> theGuilds,
+									  final boolean thePrune)
+									  throws SyncFailedException {
+		int result = 0;
+		
+		for (final Map.Entry<String, String> entry: theGuilds.entrySet()) {
+			if (entry.getValue() != null
+				&& !myPreferences.containsKey(entry.getKey())) {
+				myPreferences.put(entry.getKey(), new GuildPreferences(
+						entry.getKey(), entry.getValue()));
+				myChanged.add(entry.getKey());
+				result++;
+			}
 		}
 		
-		return myPreferences.get(theGuild).getDefaultChannelID();
+		if (thePrune) {
+			for (final String guild: new ArrayList<String>(
+					myPreferences.keySet())) {
+				if (!theGuilds.containsKey(guild)) {
+					myPreferences.remove(guild);
+					myChanged.add(guild);
+					result++;
+				}
+			}
+		}
+		
+		// Saves every change at once.
+		if (result > 0) {
+			save();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Sets how often, in minutes, stream notifications for this guild are
+	 * collected into a single digest message, or 0 to send each
+	 * notification as it happens, adding an entry for it with
+	 * theDefaultChannelID if there is none. Saves the results to text file
+	 * afterward.
+	 * 
+	 * @param theGuild is the guild this setting pertains to.
+	 * @param theDefaultChannelID the ID of the default channel used if
+	 * there is no entry for theGuild.
+	 * @param theMinutes is the time in minutes between digests, or 0.
+	 * @throws SyncFailedException if changes were unable to be saved to
+	 * "preferences.txt"
+	 */
+	public synchronized void setDigestMinutes(final String theGuild,
+											  final String theDefaultChannelID,
+											  final int theMinutes)
+											  throws SyncFailedException {
+		GuildPreferences pref = myPreferences.get(theGuild);
+		if (pref == null) {
+			pref = new GuildPreferences(theGuild, theDefaultChannelID);
+			myPreferences.put(theGuild, pref);
+		}
+		
+		pref.setDigestMinutes(theMinutes);
+		myChanged.add(theGuild);
+		save();
+	}
+	
+	/**
+	 * Returns how often, in minutes, stream notifications for this guild
+	 * are collected into a digest, or 0 if digests are off or there is no
+	 * entry for theGuild.
+	 * 
+	 * @param theGuild is the guild you want the digest setting of.
+	 * @return the time in minutes between digests of theGuild, or 0.
+	 */
+	public int getDigestMinutes(final String theGuild) {
+		final GuildPreferences pref = myPreferences.get(theGuild);
+		return pref == null ? 0 : pref.getDigestMinutes();
+	}
+	
+	/**
+	 * Turns the live board of this guild on or off, adding an entry for it
+	 * with theDefaultChannelID if there is none. Turning it off also
+	 * forgets the board message. Saves the results to text file afterward.
+	 * 
+	 * @param theGuild is the guild this setting pertains to.
+	 * @param theDefaultChannelID the ID of the default channel used if
+	 * there is no entry for theGuild.
+	 * @param theBoard is whether the guild has a live board.
+	 * @throws SyncFailedException if changes were unable to be saved to
+	 * "preferences.txt"
+	 */
+	public synchronized void setBoard(final String theGuild,
+									  final String theDefaultChannelID,
+									  final boolean theBoard)
+									  throws SyncFailedException {
+		GuildPreferences pref = myPreferences.get(theGuild);
+		if (pref == null) {
+			pref = new GuildPreferences(theGuild, theDefaultChannelID);
+			myPreferences.put(theGuild, pref);
+		}
+		
+		pref.setBoard(theBoard);
+		if (!theBoard) {
+			pref.setBoardMessageID(null);
+		}
+		myChanged.add(theGuild);
+		save();
+	}
+	
+	/**
+	 * Returns true if this guild has a live board instead of stream
+	 * notifications, or false if there is no entry for theGuild.
+	 * 
+	 * @param theGuild is the guild you want the board setting of.
+	 * @return whether theGuild has a live board.
+	 */
+	public boolean hasBoard(final String theGuild) {
+		final GuildPreferences pref = myPreferences.get(theGuild);
+		return pref != null && pref.hasBoard();
+	}
+	
+	/**
+	 * Sets the ID of the message that shows the live board of this guild,
+	 * so it can be edited again after Stream Bot restarts. Saves the
+	 * results to text file afterward. Does nothing if there is no entry
+	 * for theGuild or its board has been turned off.
+	 * 
+	 * @param theGuild is the guild this setting pertains to.
+	 * @param theMessageID is the ID of the board message.
+	 * @throws SyncFailedException if changes were unable to be saved to
+	 * "preferences.txt"
+	 */
+	public synchronized void setBoardMessage(final String theGuild,
+											 final String theMessageID)
+											 throws SyncFailedException {
+		final GuildPreferences pref = myPreferences.get(theGuild);
+		if (pref != null && pref.hasBoard()) {
+			pref.setBoardMessageID(theMessageID);
+			myChanged.add(theGuild);
+			save();
+		}
+	}
+	
+	/**
+	 * Returns the ID of the message that shows the live board of this
+	 * guild, or null if it has none yet.
+	 * 
+	 * @param theGuild is the guild you want the board message of.
+	 * @return the ID of the board message, or null.
+	 */
+	public String findBoardMessage(final String theGuild) {
+		final GuildPreferences pref = myPreferences.get(theGuild);
+		return pref == null ? null : pref.getBoardMessageID();
 	}
 	
 	/**
@@ -209,51 +453,260 @@ public final class Preferences {
 	 * This method should be called after editing the contents of one
 	 * entry. This will save the contents of myPreferences in the text file
 	 * "preferences.txt" to ensure that it accessed after Stream Bot shuts
-	 * down. This method will return true if a save was successfully done.
+	 * down. If another process saved the file since it was last read, its
+	 * entries are merged with the ones changed by this process first.
+	 * This method will return true if a save was successfully done.
 	 * 
 	 * @return whether the save was successful.
 	 */
-	private boolean saveContents() {
-		// PrintStream for saving the contents of myPrefernces to the file.
-		PrintStream stream = null;
-		// Tells whether the file could be found.
-		boolean fileFound = false;
+	private synchronized boolean saveContents() {
+		final PreferencesEvent record = PreferencesEvent.started("save");
+		// The number of bytes written.
+		long bytes = 0;
+		// The file locked while saving, shared with other processes.
+		RandomAccessFile lockFile = null;
+		// The lock held on lockFile.
+		FileLock lock = null;
 		// Tells whether the save was successful.
 		boolean result = false;
 		
+		try {
+			lockFile = new RandomAccessFile(myFile.getPath() + LOCK_SUFFIX,
+											"rw");
+			lock = lockFile.getChannel().lock();
+			
+			// Merge any changes saved by other processes.
+			final Map<String, GuildPreferences> contents =
+					new HashMap<String, GuildPreferences>();
+			final long version = readContents(contents);
+			if (version > myVersion) {
+				merge(contents, version);
+			}
+			
+			/* Write the contents of myPreferences to a temporary file and
+			   then replace "preferences.txt", so that readers never see a
+			   partially written file. */
+			final File temp = new File(myFile.getPath() + TEMP_SUFFIX);
+			final PrintStream stream = new PrintStream(temp);
+			try {
+				stream.println(VERSION_PREFIX + (myVersion + 1));
+				for (final GuildPreferences p: myPreferences.values()) {
+					final StringBuilder builder = new StringBuilder();
+					builder.append(p.getGuildName());
+					builder.append(DELIMITER);
+					builder.append(p.getDefaultChannelID());
+					builder.append(DELIMITER);
+					builder.append(p.getDigestMinutes());
+					builder.append(DELIMITER);
+					builder.append(p.hasBoard() ? 1 : 0);
+					builder.append(DELIMITER);
+					builder.append(p.getBoardMessageID() == null ? NO_MESSAGE
+								   : p.getBoardMessageID());
+					stream.println(builder.toString());
+				}
+			} finally {
+				stream.close();
+			}
+			bytes = temp.length();
+			Files.move(temp.toPath(), myFile.toPath(),
+					   StandardCopyOption.REPLACE_EXISTING,
+					   StandardCopyOption.ATOMIC_MOVE);
+			
+			myVersion++;
+			myChanged.clear();
+			result = true;
+		} catch (final IOException ex) {
+			ex.printStackTrace();
+		} finally {
+			close(lock, lockFile);
+			record.completed(myPreferences.size(), bytes, result);
+		}
 		
-		// Try to set the print stream.
+		// Return whether the save was successful.
+		return result;
+	}
+	
+	/**
+	 * Replaces the contents of myPreferences with theContents, read from
+	 * version theVersion of the file, keeping the entries changed by this
+	 * process that have not been saved yet. Entries removed by this
+	 * process stay removed.
+	 * 
+	 * @param theContents are the entries read from the file.
+	 * @param theVersion is the version of the file theContents were read
+	 * from.
+	 */
+	private void merge(final Map<String, GuildPreferences> theContents,
+					   final long theVersion) {
+		for (final String guild: myChanged) {
+			final GuildPreferences pref = myPreferences.get(guild);
+			if (pref == null) {
+				theContents.remove(guild);
+			} else {
+				theContents.put(guild, pref);
+			}
+		}
+		myPreferences.keySet().retainAll(theContents.keySet());
+		myPreferences.putAll(theContents);
+		myVersion = theVersion;
+	}
+	
+	/**
+	 * Reads the entries of the file into theContents. Returns the version
+	 * of the file, which is 0 for files saved before versions were added
+	 * or not saved yet, or -1 if the file could not be read.
+	 * 
+	 * @param theContents is the map the entries are read into.
+	 * @return the version of the file, or -1 if it could not be read.
+	 */
+	private long readContents(final Map<String, GuildPreferences> theContents) {
+		// Scanner for reading the file for guild system preferences.
+		Scanner fileReader = null;
+		// The version of the file.
+		long result = 0;
+		
+		// Attempts to open the file.
 		try {
-			stream = new PrintStream(new File(PREFERENCES_FILE));
-			fileFound = true;
+			fileReader = new Scanner(myFile);
 		} catch (final FileNotFoundException ex) {
+			// A file that was never saved is read as empty.
+			if (myFile.exists()) {
+				ex.printStackTrace();
+				result = -1;
+			}
+		}
+		
+		// If the file was opened then continue to read the file.
+		if (fileReader != null) {
+			while (fileReader.hasNextLine()) {
+				final String line = fileReader.nextLine();
+				if (line.startsWith(VERSION_PREFIX)) {
+					result = parseVersion(line);
+				} else if (!line.isEmpty()) {
+					final GuildPreferences guild = parseGuild(line);
+					if (guild != null) {
+						theContents.put(guild.getGuildName(), guild);
+					}
+				}
+			}
+			fileReader.close();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the version written on the first line of the file, without
+	 * reading the rest of it. Returns 0 if the file has no version and -1
+	 * if it could not be read.
+	 * 
+	 * @return the version of the file.
+	 */
+	private long readVersion() {
+		long result = -1;
+		
+		try (BufferedReader reader = new BufferedReader(
+				new FileReader(myFile))) {
+			final String line = reader.readLine();
+			result = 0;
+			if (line != null && line.startsWith(VERSION_PREFIX)) {
+				result = parseVersion(line);
+			}
+		} catch (final FileNotFoundException ex) {
+			// Nothing has been saved yet, which is checked on every sync.
+		} catch (final IOException ex) {
 			ex.printStackTrace();
 		}
 		
+		return result;
+	}
+	
+	/**
+	 * Returns the version written on theLine, the first line of the file.
+	 * A version that is not a number is read as 0, so that the next save
+	 * replaces it.
+	 * 
+	 * @param theLine is the line holding the version.
+	 * @return the version on theLine, or 0.
+	 */
+	private long parseVersion(final String theLine) {
+		long result = 0;
+		
+		try {
+			result = Long.parseLong(theLine.substring(
+					VERSION_PREFIX.length()).trim());
+		} catch (final NumberFormatException ex) {
+			System.err.println("Ignoring bad version in " + myFile + ": "
+							   + theLine);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the entry written on theLine of the file, or null if the
+	 * line is not a valid entry. Bad lines are skipped with a warning so
+	 * that one of them does not stop every other entry from loading.
+	 * 
+	 * @param theLine is a line of the file other than the version.
+	 * @return the entry on theLine, or null.
+	 */
+	private GuildPreferences parseGuild(final String theLine) {
+		final String[] pref = theLine.split(DELIMITER);
+		GuildPreferences result = null;
 		
-		/* If the file was found, write the contents of myPreferences to
-		   "preferences.txt". */
-		if (fileFound) {
-			for (final String guild: myPreferences.keySet()) {
-				final StringBuilder builder = new StringBuilder();
-				GuildPreferences p = myPreferences.get(guild);
-				
-				builder.append(p.getGuildName());
-				builder.append(DELIMITER);
-				builder.append(p.getDefaultChannelID());
-				stream.println(builder.toString());
+		if (pref.length > 1) {
+			try {
+				result = new GuildPreferences(pref[0], pref[1]);
+				// Digests were added later, so older lines lack them.
+				if (pref.length > 2) {
+					result.setDigestMinutes(Math.max(0,
+							Integer.parseInt(pref[2])));
+				}
+				// Live boards were added after digests.
+				if (pref.length > 4) {
+					result.setBoard("1".equals(pref[3]));
+					result.setBoardMessageID(NO_MESSAGE.equals(pref[4])
+											 ? null : pref[4]);
+				}
+			} catch (final NumberFormatException ex) {
+				result = null;
 			}
-			result = true;
 		}
 		
-		// Return whether the save was successful.
+		if (result == null) {
+			System.err.println("Ignoring bad line in " + myFile + ": "
+							   + theLine);
+		}
+		
 		return result;
 	}
 	
+	/**
+	 * Releases theLock and closes theFile, ignoring either if null.
+	 * 
+	 * @param theLock is the lock to release.
+	 * @param theFile is the file to close.
+	 */
+	private static void close(final FileLock theLock,
+							  final RandomAccessFile theFile) {
+		try {
+			if (theLock != null) {
+				theLock.release();
+			}
+			if (theFile != null) {
+				theFile.close();
+			}
+		} catch (final IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+	
 	/**
 	 * GuildPreferences.java is an object that stores information pertaining to
 	 * the preferences of a guild for how Stream Bot should interact with that
-	 * particular guild.
+	 * particular guild. Its settings are changed while Preferences is
+	 * locked but read without the lock, so they are volatile.
 	 * 
 	 * @author Tucker Stewart
 	 * @version 1.0
@@ -267,7 +720,22 @@ public final class Preferences {
 		/**
 		 * The ID of the selected default channel to be used by Stream Bot.
 		 */
-		private String myDefaultChannelID;
+		private volatile String myDefaultChannelID;
+		
+		/**
+		 * The time in minutes between digests, or 0 if digests are off.
+		 */
+		private volatile int myDigestMinutes;
+		
+		/**
+		 * Whether a live board is kept instead of sending notifications.
+		 */
+		private volatile boolean myBoard;
+		
+		/**
+		 * The ID of the message showing the live board, or null.
+		 */
+		private volatile String myBoardMessageID;
 		
 		/**
 		 * The constructor of the GuildPreference object. Values are set to
@@ -309,6 +777,60 @@ public final class Preferences {
 			this.myDefaultChannelID = theDefaultChannelID;
 		}
 		
+		/**
+		 * Returns the time in minutes between digests, or 0 if off.
+		 * 
+		 * @return the time in minutes between digests.
+		 */
+		public int getDigestMinutes() {
+			return this.myDigestMinutes;
+		}
+		
+		/**
+		 * Sets the time in minutes between digests, or 0 to turn them off.
+		 * 
+		 * @param theMinutes is the time in minutes between digests.
+		 */
+		public void setDigestMinutes(final int theMinutes) {
+			this.myDigestMinutes = theMinutes;
+		}
+		
+		/**
+		 * Returns whether a live board is kept for this guild.
+		 * 
+		 * @return whether this guild has a live board.
+		 */
+		public boolean hasBoard() {
+			return this.myBoard;
+		}
+		
+		/**
+		 * Sets whether a live board is kept for this guild.
+		 * 
+		 * @param theBoard is whether this guild has a live board.
+		 */
+		public void setBoard(final boolean theBoard) {
+			this.myBoard = theBoard;
+		}
+		
+		/**
+		 * Returns the ID of the message showing the live board, or null.
+		 * 
+		 * @return the ID of the board message.
+		 */
+		public String getBoardMessageID() {
+			return this.myBoardMessageID;
+		}
+		
+		/**
+		 * Sets the ID of the message showing the live board.
+		 * 
+		 * @param theMessageID is the ID of the board message, or null.
+		 */
+		public void setBoardMessageID(final String theMessageID) {
+			this.myBoardMessageID = theMessageID;
+		}
+		
 		/**
 		 * Tests to see if this GuildPreferences is equal to theOther. This
 		 * method will return true only if theOther is not null, it is a
@@ -344,13 +866,16 @@ public final class Preferences {
 		
 		/**
 		 * Returns the string representation of this GuildPreference object.
-		 * <hr>this.myGuild:this.myDefault
+		 * <hr>this.myGuild:this.myDefault:this.myDigestMinutes:this.myBoard:
+		 * this.myBoardMessageID
 		 * 
 		 * @return the string representation of this GuildPreference object.
 		 */
 		@Override
 		public String toString() {
-			return this.myGuild + ":" + this.myDefaultChannelID;
+			return this.myGuild + ":" + this.myDefaultChannelID + ":"
+				   + this.myDigestMinutes + ":" + this.myBoard + ":"
+				   + this.myBoardMessageID;
 		}
 	}
 }
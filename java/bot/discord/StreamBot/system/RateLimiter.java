@@ -0,0 +1,99 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.system;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bot.discord.StreamBot.util.RateLimit;
+
+/**
+ * RateLimiter.java keeps a token bucket for each key, such as a user or a
+ * guild, and tells whether the holder of a key may do something now. Each
+ * bucket is a single number: the time at which it will be full again.
+ * Taking a token moves that time forward by the time it takes to earn one
+ * token back, and is refused if the bucket would then need longer than a
+ * whole period to refill. Buckets are updated with compare-and-set, so no
+ * locks are taken. Buckets that have refilled hold no information and are
+ * removed by sweep().
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class RateLimiter {
+	/**
+	 * A map of each key with the time in nanoseconds its bucket is full.
+	 */
+	private final Map<String, AtomicLong> myBuckets;
+
+	/**
+	 * The default constructor of a RateLimiter.
+	 */
+	public RateLimiter() {
+		myBuckets = new ConcurrentHashMap<String, AtomicLong>();
+	}
+
+	/**
+	 * Takes a token from the bucket of theKey. Returns false, without
+	 * taking a token, if the bucket is empty under theLimit.
+	 *
+	 * @param theKey is the key of the bucket.
+	 * @param theLimit is the rate limit of the bucket.
+	 * @return whether a token was taken.
+	 */
+	public boolean tryAcquire(final String theKey, final RateLimit theLimit) {
+		final long now = System.nanoTime();
+		AtomicLong bucket = myBuckets.get(theKey);
+		if (bucket == null) {
+			bucket = new AtomicLong(now);
+			final AtomicLong previous = myBuckets.putIfAbsent(theKey, bucket);
+			if (previous != null) {
+				bucket = previous;
+			}
+		}
+
+		while (true) {
+			final long full = bucket.get();
+			final long next = (full - now > 0 ? full : now)
+					+ theLimit.getIntervalNanos();
+			if (next - now > theLimit.getPeriodNanos()) {
+				return false;
+			}
+			if (bucket.compareAndSet(full, next)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gives back a token taken from the bucket of theKey with tryAcquire,
+	 * such as when the action it was taken for was refused for another
+	 * reason.
+	 *
+	 * @param theKey is the key of the bucket.
+	 * @param theLimit is the rate limit the token was taken under.
+	 */
+	public void release(final String theKey, final RateLimit theLimit) {
+		final AtomicLong bucket = myBuckets.get(theKey);
+
+		if (bucket != null) {
+			bucket.addAndGet(-theLimit.getIntervalNanos());
+		}
+	}
+
+	/**
+	 * Removes the buckets that have refilled. Should be called
+	 * periodically so that keys that are no longer used are forgotten.
+	 *
+	 * @return the number of buckets still held.
+	 */
+	public int sweep() {
+		final long now = System.nanoTime();
+		myBuckets.values().removeIf(theBucket -> theBucket.get() - now <= 0);
+		return myBuckets.size();
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ShardLeases.java decides which shards this Stream Bot process runs when
+ * several processes share the work. Each shard has a lease file in a
+ * directory shared by all processes, and a process owns a shard for as
+ * long as it holds the lock on that shard's lease file. Locks are
+ * released by the operating system when a process exits, so the shards of
+ * a process that crashed are picked up by the next process that calls
+ * acquire(). The owner and the time of its last renewal are written to
+ * the lease file so that operators can see who owns which shard.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class ShardLeases {
+	/**
+	 * The prefix of the name of each lease file.
+	 */
+	private static final String LEASE_PREFIX = "shard-";
+
+	/**
+	 * The suffix of the name of each lease file.
+	 */
+	private static final String LEASE_SUFFIX = ".lease";
+
+	/**
+	 * The directory holding the lease files.
+	 */
+	private final File myDirectory;
+
+	/**
+	 * The name this process writes into the leases it owns.
+	 */
+	private final String myNodeID;
+
+	/**
+	 * The total number of shards shared by all processes.
+	 */
+	private final int myShardTotal;
+
+	/**
+	 * A map of each shard owned by this process with its lease.
+	 */
+	private final Map<Integer, Lease> myLeases;
+
+	/**
+	 * The constructor of a ShardLeases object.
+	 *
+	 * @param theDirectory is the shared directory holding the lease files.
+	 * @param theNodeID is the name of this process.
+	 * @param theShardTotal is the total number of shards.
+	 */
+	public ShardLeases(final File theDirectory, final String theNodeID,
+					   final int theShardTotal) {
+		myDirectory = theDirectory;
+		myNodeID = theNodeID;
+		myShardTotal = theShardTotal;
+		myLeases = new ConcurrentHashMap<Integer, Lease>();
+	}
+
+	/**
+	 * Tries to take the lease of every shard not owned by any process,
+	 * until this process owns theMaximum shards. Returns the shards whose
+	 * leases were newly taken, which the caller should start.
+	 *
+	 * @param theMaximum is the most shards this process may own.
+	 * @return the IDs of the shards newly owned by this process.
+	 */
+	public synchronized List<Integer> acquire(final int theMaximum) {
+		final List<Integer> result = new ArrayList<Integer>();
+		myDirectory.mkdirs();
+
+		for (int shard = 0; shard < myShardTotal
+						   && myLeases.size() < theMaximum; shard++) {
+			if (!myLeases.containsKey(shard)) {
+				final Lease lease = tryLock(shard);
+				if (lease != null) {
+					myLeases.put(shard, lease);
+					result.add(shard);
+				}
+			}
+		}
+
+		renew();
+		return result;
+	}
+
+	/**
+	 * Writes this process and the current time into each lease owned by
+	 * this process.
+	 */
+	public synchronized void renew() {
+		final byte[] owner = (myNodeID + ":" + System.currentTimeMillis())
+				.getBytes(StandardCharsets.UTF_8);
+
+		for (final Lease lease: myLeases.values()) {
+			try {
+				lease.myFile.seek(0);
+				lease.myFile.write(owner);
+				lease.myFile.setLength(owner.length);
+			} catch (final IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Releases the lease of theShard so that another process may take it.
+	 * Should be called if this process failed to start theShard.
+	 *
+	 * @param theShard is the ID of the shard.
+	 */
+	public synchronized void release(final int theShard) {
+		final Lease lease = myLeases.remove(theShard);
+
+		if (lease != null) {
+			try {
+				lease.myLock.release();
+				lease.myFile.close();
+			} catch (final IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns the IDs of the shards owned by this process.
+	 *
+	 * @return the IDs of the shards owned by this process.
+	 */
+	public Set<Integer> getOwnedShards() {
+		return new TreeSet<Integer>(myLeases.keySet());
+	}
+
+	/**
+	 * Releases every lease owned by this process so that other processes
+	 * may take them. Should be called when this process shuts down.
+	 */
+	public synchronized void releaseAll() {
+		for (final Lease lease: myLeases.values()) {
+			try {
+				lease.myLock.release();
+				lease.myFile.close();
+			} catch (final IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+		myLeases.clear();
+	}
+
+	/**
+	 * Tries to lock the lease file of theShard. Returns the lease if the
+	 * lock was taken, or null if another process owns the shard.
+	 *
+	 * @param theShard is the ID of the shard.
+	 * @return the lease of theShard, or null if it is owned elsewhere.
+	 */
+	private Lease tryLock(final int theShard) {
+		final File file = new File(myDirectory,
+								   LEASE_PREFIX + theShard + LEASE_SUFFIX);
+		Lease result = null;
+		RandomAccessFile access = null;
+		// Tells whether the file should be closed again.
+		boolean close = true;
+
+		try {
+			access = new RandomAccessFile(file, "rw");
+			final FileLock lock = access.getChannel().tryLock();
+			if (lock != null) {
+				result = new Lease(access, lock);
+				close = false;
+			}
+		} catch (final IOException ex) {
+			ex.printStackTrace();
+		} catch (final OverlappingFileLockException ex) {
+			/* Another ShardLeases in this process owns the shard. Closing
+			   the file would release that lock as well, so it is left
+			   open. */
+			close = false;
+		}
+
+		if (close && access != null) {
+			try {
+				access.close();
+			} catch (final IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Lease.java is the open lease file of a shard owned by this process
+	 * along with the lock held on it.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private static final class Lease {
+		/**
+		 * The open lease file.
+		 */
+		private final RandomAccessFile myFile;
+
+		/**
+		 * The lock held on the lease file.
+		 */
+		private final FileLock myLock;
+
+		/**
+		 * The constructor of a Lease.
+		 *
+		 * @param theFile is the open lease file.
+		 * @param theLock is the lock held on theFile.
+		 */
+		Lease(final RandomAccessFile theFile, final FileLock theLock) {
+			myFile = theFile;
+			myLock = theLock;
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.system;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TimingWheel.java runs tasks after a delay, for very large numbers of
+ * tasks, using a hierarchical timing wheel. Time is divided into ticks.
+ * The lowest wheel has a slot for each of the next 64 ticks, the wheel
+ * above it a slot for each of the next 64 groups of 64 ticks, and so on.
+ * When a higher slot comes due its tasks are moved down to the lower
+ * wheel, so scheduling and running a task costs the same regardless of
+ * how many tasks are waiting.
+ * <p>
+ * Tasks may be scheduled from any thread. The wheel itself is only
+ * touched by the thread calling advance(), so it needs no locking. Tasks
+ * run on that thread and should be short.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class TimingWheel {
+	/**
+	 * The number of bits of a tick used to pick a slot of one wheel.
+	 */
+	private static final int SLOT_BITS = 6;
+
+	/**
+	 * The number of slots of each wheel.
+	 */
+	private static final int SLOTS = 1 << SLOT_BITS;
+
+	/**
+	 * The mask for picking a slot of one wheel.
+	 */
+	private static final int SLOT_MASK = SLOTS - 1;
+
+	/**
+	 * The number of wheels.
+	 */
+	private static final int LEVELS = 4;
+
+	/**
+	 * The longest delay in ticks the wheels can hold. Tasks with a longer
+	 * delay are placed at this delay and moved again when it comes due.
+	 */
+	private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+	/**
+	 * The length of a tick in milliseconds.
+	 */
+	private final long myTickMillis;
+
+	/**
+	 * The time in milliseconds of tick 0.
+	 */
+	private final long myStart;
+
+	/**
+	 * The first task of each slot of each wheel.
+	 */
+	private final Timeout[][] mySlots;
+
+	/**
+	 * Tasks scheduled since the last tick, not yet placed on a wheel.
+	 */
+	private final Queue<Timeout> myPending;
+
+	/**
+	 * The current tick. Only touched by the thread calling advance().
+	 */
+	private long myTick;
+
+	/**
+	 * The constructor of a TimingWheel.
+	 *
+	 * @param theTickMillis is the length of a tick in milliseconds. Tasks
+	 * run up to one tick late.
+	 */
+	public TimingWheel(final long theTickMillis) {
+		myTickMillis = theTickMillis;
+		myStart = System.currentTimeMillis();
+		mySlots = new Timeout[LEVELS][SLOTS];
+		myPending = new ConcurrentLinkedQueue<Timeout>();
+	}
+
+	/**
+	 * Calls advance() once per tick using theScheduler.
+	 *
+	 * @param theScheduler is the scheduler that drives this wheel.
+	 */
+	public void start(final ScheduledExecutorService theScheduler) {
+		theScheduler.scheduleAtFixedRate(this::advance, myTickMillis,
+										 myTickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Schedules theTask to run after theDelay milliseconds.
+	 *
+	 * @param theTask is the task being scheduled.
+	 * @param theDelay is the delay in milliseconds.
+	 */
+	public void schedule(final Runnable theTask, final long theDelay) {
+		final long deadline = System.currentTimeMillis() + theDelay - myStart;
+		// Rounds up so that a task never runs early.
+		myPending.add(new Timeout(theTask,
+				(deadline + myTickMillis - 1) / myTickMillis));
+	}
+
+	/**
+	 * Moves the wheels forward to the current time and runs every task
+	 * that has come due. Should only be called by one thread at a time.
+	 */
+	public void advance() {
+		final long target = (System.currentTimeMillis() - myStart)
+				/ myTickMillis;
+		final List<Timeout> due = new ArrayList<Timeout>();
+
+		// Catches up on any ticks missed while the thread was busy.
+		while (myTick < target) {
+			myTick++;
+			for (Timeout timeout = myPending.poll(); timeout != null;
+				 timeout = myPending.poll()) {
+				place(timeout, due);
+			}
+
+			// Moves the tasks of higher slots that came due down a wheel.
+			for (int level = LEVELS - 1; level > 0; level--) {
+				final int shift = SLOT_BITS * level;
+				if ((myTick & ((1L << shift) - 1)) == 0) {
+					final int slot = (int) (myTick >>> shift) & SLOT_MASK;
+					Timeout timeout = mySlots[level][slot];
+					mySlots[level][slot] = null;
+					while (timeout != null) {
+						final Timeout next = timeout.myNext;
+						place(timeout, due);
+						timeout = next;
+					}
+				}
+			}
+
+			// Collects the tasks of the current slot of the lowest wheel.
+			final int slot = (int) myTick & SLOT_MASK;
+			for (Timeout timeout = mySlots[0][slot]; timeout != null;
+				 timeout = timeout.myNext) {
+				due.add(timeout);
+			}
+			mySlots[0][slot] = null;
+		}
+
+		for (final Timeout timeout: due) {
+			try {
+				timeout.myTask.run();
+			} catch (final RuntimeException ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Places theTimeout in the slot of the wheel that matches its delay
+	 * from the current tick, or adds it to theDue if it is already due.
+	 *
+	 * @param theTimeout is the task being placed.
+	 * @param theDue is the list of tasks that are due.
+	 */
+	private void place(final Timeout theTimeout, final List<Timeout> theDue) {
+		final long delay = Math.min(theTimeout.myDeadline - myTick, MAX_DELAY);
+
+		if (delay <= 0) {
+			theDue.add(theTimeout);
+		} else {
+			int level = 0;
+			while (delay >= 1L << (SLOT_BITS * (level + 1))) {
+				level++;
+			}
+			final int slot = (int) ((myTick + delay) >>> (SLOT_BITS * level))
+					& SLOT_MASK;
+			theTimeout.myNext = mySlots[level][slot];
+			mySlots[level][slot] = theTimeout;
+		}
+	}
+
+	/**
+	 * Timeout.java is a task waiting on a wheel, linked to the next task
+	 * in the same slot.
+	 *
+	 * @author Tucker Stewart
+	 * @version 1.0
+	 */
+	private static final class Timeout {
+		/**
+		 * The task to run.
+		 */
+		private final Runnable myTask;
+
+		/**
+		 * The tick the task is due.
+		 */
+		private final long myDeadline;
+
+		/**
+		 * The next task in the same slot.
+		 */
+		private Timeout myNext;
+
+		/**
+		 * The constructor of a Timeout.
+		 *
+		 * @param theTask is the task to run.
+		 * @param theDeadline is the tick theTask is due.
+		 */
+		Timeout(final Runnable theTask, final long theDeadline) {
+			myTask = theTask;
+			myDeadline = theDeadline;
+		}
+	}
+}
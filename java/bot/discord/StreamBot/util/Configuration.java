@@ -0,0 +1,618 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Configuration.java is an immutable snapshot of the settings of Stream
+ * Bot. The current snapshot is read with get(), which is a single volatile
+ * read and is safe to call on every event. When the configuration file
+ * changes a new snapshot is built and swapped in with set(), and every
+ * listener is told so that thread pools and other resources can be
+ * resized. Settings not given fall back to the values in References.
+ * <p>
+ * The token, the preferences file and the cluster settings are only read
+ * when Stream Bot starts, so changing them requires a restart.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class Configuration {
+	/**
+	 * The key of the prefix of commands.
+	 */
+	public static final String COMMAND_PREFIX = "command.prefix";
+
+	/**
+	 * The key of the token used to log in to Discord.
+	 */
+	public static final String TOKEN = "bot.token";
+
+	/**
+	 * The key of the location of the system preferences file.
+	 */
+	public static final String PREFERENCES_FILE = "preferences.file";
+
+	/**
+	 * The key of the number of failures that opens a circuit breaker.
+	 */
+	public static final String BREAKER_THRESHOLD = "breaker.threshold";
+
+	/**
+	 * The key of the time in milliseconds a circuit breaker stays open.
+	 */
+	public static final String BREAKER_OPEN_MILLIS = "breaker.open_millis";
+
+	/**
+	 * The key of the directory shared by a cluster.
+	 */
+	public static final String CLUSTER_DIRECTORY = "cluster.dir";
+
+	/**
+	 * The key of the name of this process in a cluster.
+	 */
+	public static final String NODE_ID = "cluster.node_id";
+
+	/**
+	 * The key of the total number of shards in a cluster.
+	 */
+	public static final String SHARD_TOTAL = "cluster.shard_total";
+
+	/**
+	 * The key of the most shards one process of a cluster may run.
+	 */
+	public static final String MAX_SHARDS = "cluster.max_shards";
+
+	/**
+	 * The key of the time in milliseconds between cluster checks.
+	 */
+	public static final String CLUSTER_SYNC_MILLIS = "cluster.sync_millis";
+
+	/**
+	 * The key of the number of threads for scheduled background work.
+	 */
+	public static final String SCHEDULER_THREADS = "scheduler.threads";
+
+	/**
+	 * The key of the shortest time in milliseconds between board edits.
+	 */
+	public static final String BOARD_INTERVAL_MILLIS = "board.interval_millis";
+
+	/**
+	 * The key of whether the always-on flight recording is started.
+	 */
+	public static final String PROFILING_ENABLED = "profiling.enabled";
+
+	/**
+	 * The key of the longest time in minutes recorded events are kept.
+	 */
+	public static final String PROFILING_MAX_AGE_MINUTES =
+			"profiling.max_age_minutes";
+
+	/**
+	 * The key of the most megabytes of recorded events kept.
+	 */
+	public static final String PROFILING_MAX_SIZE_MB = "profiling.max_size_mb";
+
+	/**
+	 * The key of the directory flight recording dumps are written to.
+	 */
+	public static final String PROFILING_DIRECTORY = "profiling.dir";
+
+	/**
+	 * The key of the ID of the user allowed to dump the flight recording.
+	 */
+	public static final String PROFILING_OWNER_ID = "profiling.owner_id";
+
+	/**
+	 * The key of the number of slots of the event pipeline.
+	 */
+	public static final String PIPELINE_SIZE = "pipeline.size";
+
+	/**
+	 * The key of the number of dispatch threads of the event pipeline.
+	 */
+	public static final String PIPELINE_DISPATCHERS = "pipeline.dispatchers";
+
+	/**
+	 * The prefix of the keys of command rate limits. A limit is set with
+	 * "limit.{command}.user" or "limit.{command}.guild", using "default"
+	 * as the command for the limit of commands without their own.
+	 */
+	public static final String LIMIT_PREFIX = "limit.";
+
+	/**
+	 * The key of how often each user may use a command by default.
+	 */
+	public static final String USER_LIMIT = LIMIT_PREFIX + "default.user";
+
+	/**
+	 * The key of how often a command may be used in a guild by default.
+	 */
+	public static final String GUILD_LIMIT = LIMIT_PREFIX + "default.guild";
+
+	/**
+	 * Every key that may be set in the environment.
+	 */
+	public static final String[] KEYS = {COMMAND_PREFIX, TOKEN,
+		PREFERENCES_FILE, BREAKER_THRESHOLD, BREAKER_OPEN_MILLIS,
+		CLUSTER_DIRECTORY, NODE_ID, SHARD_TOTAL, MAX_SHARDS,
+		CLUSTER_SYNC_MILLIS, SCHEDULER_THREADS, BOARD_INTERVAL_MILLIS,
+		PROFILING_ENABLED, PROFILING_MAX_AGE_MINUTES, PROFILING_MAX_SIZE_MB,
+		PROFILING_DIRECTORY, PROFILING_OWNER_ID, PIPELINE_SIZE,
+		PIPELINE_DISPATCHERS, USER_LIMIT, GUILD_LIMIT};
+
+	/**
+	 * The suffix of the keys of limits per user.
+	 */
+	private static final String USER_SUFFIX = ".user";
+
+	/**
+	 * The suffix of the keys of limits per guild.
+	 */
+	private static final String GUILD_SUFFIX = ".guild";
+
+	/**
+	 * The listeners told whenever a new configuration is set.
+	 */
+	private static final List<Consumer<Configuration>> LISTENERS =
+			new CopyOnWriteArrayList<Consumer<Configuration>>();
+
+	/**
+	 * The current configuration.
+	 */
+	private static volatile Configuration ourCurrent =
+			new Configuration(new Properties());
+
+	/**
+	 * The prefix of commands usable by StreamBot.
+	 */
+	private final String myCommandPrefix;
+
+	/**
+	 * The token used to log in to Discord.
+	 */
+	private final String myToken;
+
+	/**
+	 * The location of the system preferences file.
+	 */
+	private final String myPreferencesFile;
+
+	/**
+	 * The number of consecutive failures that opens a circuit breaker.
+	 */
+	private final int myBreakerThreshold;
+
+	/**
+	 * The time in milliseconds a circuit breaker stays open.
+	 */
+	private final long myBreakerOpenMillis;
+
+	/**
+	 * The directory shared by a cluster, or null if not in a cluster.
+	 */
+	private final String myClusterDirectory;
+
+	/**
+	 * The name of this process in a cluster.
+	 */
+	private final String myNodeID;
+
+	/**
+	 * The total number of shards.
+	 */
+	private final int myShardTotal;
+
+	/**
+	 * The most shards this process may run.
+	 */
+	private final int myMaxShards;
+
+	/**
+	 * The time in milliseconds between cluster checks.
+	 */
+	private final long myClusterSyncMillis;
+
+	/**
+	 * The number of threads for scheduled background work.
+	 */
+	private final int mySchedulerThreads;
+
+	/**
+	 * The shortest time in milliseconds between edits of a live board.
+	 */
+	private final long myBoardIntervalMillis;
+
+	/**
+	 * Whether the always-on flight recording is started.
+	 */
+	private final boolean myProfilingEnabled;
+
+	/**
+	 * The longest time in minutes recorded events are kept.
+	 */
+	private final long myProfilingMaxAgeMinutes;
+
+	/**
+	 * The most megabytes of recorded events kept.
+	 */
+	private final long myProfilingMaxSizeMB;
+
+	/**
+	 * The directory flight recording dumps are written to.
+	 */
+	private final String myProfilingDirectory;
+
+	/**
+	 * The ID of the user allowed to dump the flight recording, or null.
+	 */
+	private final String myProfilingOwnerID;
+
+	/**
+	 * The number of slots of the event pipeline.
+	 */
+	private final int myPipelineSize;
+
+	/**
+	 * The number of dispatch threads of the event pipeline.
+	 */
+	private final int myPipelineDispatchers;
+
+	/**
+	 * A map of each command with its rate limit per user.
+	 */
+	private final Map<String, RateLimit> myUserLimits;
+
+	/**
+	 * A map of each command with its rate limit per guild.
+	 */
+	private final Map<String, RateLimit> myGuildLimits;
+
+	/**
+	 * The rate limit per user of commands without their own.
+	 */
+	private final RateLimit myUserLimit;
+
+	/**
+	 * The rate limit per guild of commands without their own.
+	 */
+	private final RateLimit myGuildLimit;
+
+	/**
+	 * Constructs a configuration from theProperties, using the defaults in
+	 * References for any missing settings.
+	 *
+	 * @param theProperties are the settings, keyed by the keys in KEYS.
+	 * @throws IllegalArgumentException if a setting has an invalid value.
+	 */
+	public Configuration(final Properties theProperties) {
+		myCommandPrefix = theProperties.getProperty(COMMAND_PREFIX,
+				References.COMMAND_PREFIX);
+		myToken = theProperties.getProperty(TOKEN);
+		myPreferencesFile = theProperties.getProperty(PREFERENCES_FILE,
+				References.PREFERENCES_FILE);
+		myBreakerThreshold = (int) positive(theProperties, BREAKER_THRESHOLD,
+				References.BREAKER_FAILURE_THRESHOLD);
+		myBreakerOpenMillis = positive(theProperties, BREAKER_OPEN_MILLIS,
+				References.BREAKER_OPEN_MILLIS);
+		myClusterDirectory = theProperties.getProperty(CLUSTER_DIRECTORY);
+		myNodeID = theProperties.getProperty(NODE_ID,
+				ManagementFactory.getRuntimeMXBean().getName());
+		myShardTotal = (int) positive(theProperties, SHARD_TOTAL,
+				References.SHARD_TOTAL);
+		myMaxShards = (int) positive(theProperties, MAX_SHARDS,
+				myShardTotal);
+		myClusterSyncMillis = positive(theProperties, CLUSTER_SYNC_MILLIS,
+				References.CLUSTER_SYNC_MILLIS);
+		mySchedulerThreads = (int) positive(theProperties, SCHEDULER_THREADS,
+				References.SCHEDULER_THREADS);
+		myBoardIntervalMillis = positive(theProperties, BOARD_INTERVAL_MILLIS,
+				References.BOARD_INTERVAL_MILLIS);
+		myProfilingEnabled = Boolean.parseBoolean(theProperties.getProperty(
+				PROFILING_ENABLED, "true"));
+		myProfilingMaxAgeMinutes = positive(theProperties,
+				PROFILING_MAX_AGE_MINUTES, References.PROFILING_MAX_AGE_MINUTES);
+		myProfilingMaxSizeMB = positive(theProperties, PROFILING_MAX_SIZE_MB,
+				References.PROFILING_MAX_SIZE_MB);
+		myProfilingDirectory = theProperties.getProperty(PROFILING_DIRECTORY,
+				References.PROFILING_DIRECTORY);
+		myProfilingOwnerID = theProperties.getProperty(PROFILING_OWNER_ID);
+		myPipelineSize = (int) positive(theProperties, PIPELINE_SIZE,
+				References.PIPELINE_SIZE);
+		myPipelineDispatchers = (int) positive(theProperties,
+				PIPELINE_DISPATCHERS, References.PIPELINE_DISPATCHERS);
+		myUserLimit = RateLimit.parse(theProperties.getProperty(USER_LIMIT,
+				References.USER_COMMAND_LIMIT));
+		myGuildLimit = RateLimit.parse(theProperties.getProperty(GUILD_LIMIT,
+				References.GUILD_COMMAND_LIMIT));
+
+		// Reads the limits of each command that has its own.
+		myUserLimits = new HashMap<String, RateLimit>();
+		myGuildLimits = new HashMap<String, RateLimit>();
+		for (final String key: theProperties.stringPropertyNames()) {
+			if (key.startsWith(LIMIT_PREFIX) && key.endsWith(USER_SUFFIX)) {
+				myUserLimits.put(key.substring(LIMIT_PREFIX.length(),
+						key.length() - USER_SUFFIX.length()),
+						RateLimit.parse(theProperties.getProperty(key)));
+			} else if (key.startsWith(LIMIT_PREFIX)
+					   && key.endsWith(GUILD_SUFFIX)) {
+				myGuildLimits.put(key.substring(LIMIT_PREFIX.length(),
+						key.length() - GUILD_SUFFIX.length()),
+						RateLimit.parse(theProperties.getProperty(key)));
+			}
+		}
+
+		if (myCommandPrefix.isEmpty()) {
+			throw new IllegalArgumentException(COMMAND_PREFIX
+											   + " must not be empty.");
+		}
+	}
+
+	/**
+	 * Returns the current configuration.
+	 *
+	 * @return the current configuration.
+	 */
+	public static Configuration get() {
+		return ourCurrent;
+	}
+
+	/**
+	 * Replaces the current configuration with theConfiguration and tells
+	 * every listener.
+	 *
+	 * @param theConfiguration is the new configuration.
+	 */
+	public static void set(final Configuration theConfiguration) {
+		ourCurrent = theConfiguration;
+		for (final Consumer<Configuration> listener: LISTENERS) {
+			listener.accept(theConfiguration);
+		}
+	}
+
+	/**
+	 * Adds theListener to be told whenever a new configuration is set.
+	 * theListener is told the current configuration straight away.
+	 *
+	 * @param theListener is the listener being added.
+	 */
+	public static void addListener(final Consumer<Configuration> theListener) {
+		LISTENERS.add(theListener);
+		theListener.accept(ourCurrent);
+	}
+
+	/**
+	 * Returns the prefix of commands usable by StreamBot.
+	 *
+	 * @return the prefix of commands.
+	 */
+	public String getCommandPrefix() {
+		return myCommandPrefix;
+	}
+
+	/**
+	 * Returns the token used to log in to Discord.
+	 *
+	 * @return the token used to log in to Discord.
+	 */
+	public String getToken() {
+		return myToken;
+	}
+
+	/**
+	 * Returns the location of the system preferences file.
+	 *
+	 * @return the location of the system preferences file.
+	 */
+	public String getPreferencesFile() {
+		return myPreferencesFile;
+	}
+
+	/**
+	 * Returns the number of consecutive failures that opens a circuit
+	 * breaker.
+	 *
+	 * @return the failure threshold of circuit breakers.
+	 */
+	public int getBreakerThreshold() {
+		return myBreakerThreshold;
+	}
+
+	/**
+	 * Returns the time in milliseconds a circuit breaker stays open.
+	 *
+	 * @return the time in milliseconds a circuit breaker stays open.
+	 */
+	public long getBreakerOpenMillis() {
+		return myBreakerOpenMillis;
+	}
+
+	/**
+	 * Returns the directory shared by a cluster, or null if Stream Bot is
+	 * not running as a cluster.
+	 *
+	 * @return the directory shared by a cluster, or null.
+	 */
+	public String getClusterDirectory() {
+		return myClusterDirectory;
+	}
+
+	/**
+	 * Returns the name of this process in a cluster.
+	 *
+	 * @return the name of this process.
+	 */
+	public String getNodeID() {
+		return myNodeID;
+	}
+
+	/**
+	 * Returns the total number of shards.
+	 *
+	 * @return the total number of shards.
+	 */
+	public int getShardTotal() {
+		return myShardTotal;
+	}
+
+	/**
+	 * Returns the most shards this process may run.
+	 *
+	 * @return the most shards this process may run.
+	 */
+	public int getMaxShards() {
+		return myMaxShards;
+	}
+
+	/**
+	 * Returns the time in milliseconds between cluster checks.
+	 *
+	 * @return the time in milliseconds between cluster checks.
+	 */
+	public long getClusterSyncMillis() {
+		return myClusterSyncMillis;
+	}
+
+	/**
+	 * Returns the number of threads for scheduled background work.
+	 *
+	 * @return the number of scheduler threads.
+	 */
+	public int getSchedulerThreads() {
+		return mySchedulerThreads;
+	}
+
+	/**
+	 * Returns the shortest time in milliseconds between edits of the live
+	 * board of a guild.
+	 *
+	 * @return the time between board edits.
+	 */
+	public long getBoardIntervalMillis() {
+		return myBoardIntervalMillis;
+	}
+
+	/**
+	 * Returns whether the always-on flight recording is started.
+	 *
+	 * @return whether profiling is enabled.
+	 */
+	public boolean isProfilingEnabled() {
+		return myProfilingEnabled;
+	}
+
+	/**
+	 * Returns the longest time in minutes recorded events are kept.
+	 *
+	 * @return the maximum age of recorded events.
+	 */
+	public long getProfilingMaxAgeMinutes() {
+		return myProfilingMaxAgeMinutes;
+	}
+
+	/**
+	 * Returns the most megabytes of recorded events kept.
+	 *
+	 * @return the maximum size of the recording.
+	 */
+	public long getProfilingMaxSizeMB() {
+		return myProfilingMaxSizeMB;
+	}
+
+	/**
+	 * Returns the directory flight recording dumps are written to.
+	 *
+	 * @return the dump directory.
+	 */
+	public String getProfilingDirectory() {
+		return myProfilingDirectory;
+	}
+
+	/**
+	 * Returns the ID of the user allowed to dump the flight recording, or
+	 * null if only the owner of the bot application is.
+	 *
+	 * @return the ID of the profiling owner, or null.
+	 */
+	public String getProfilingOwnerID() {
+		return myProfilingOwnerID;
+	}
+
+	/**
+	 * Returns the number of slots of the event pipeline.
+	 *
+	 * @return the size of the pipeline.
+	 */
+	public int getPipelineSize() {
+		return myPipelineSize;
+	}
+
+	/**
+	 * Returns the number of dispatch threads of the event pipeline.
+	 *
+	 * @return the number of dispatch threads.
+	 */
+	public int getPipelineDispatchers() {
+		return myPipelineDispatchers;
+	}
+
+	/**
+	 * Returns how often each user may use theCommand.
+	 *
+	 * @param theCommand is the name of the command.
+	 * @return the rate limit of theCommand per user.
+	 */
+	public RateLimit getUserLimit(final String theCommand) {
+		final RateLimit limit = myUserLimits.get(theCommand);
+		return limit == null ? myUserLimit : limit;
+	}
+
+	/**
+	 * Returns how often theCommand may be used within a guild.
+	 *
+	 * @param theCommand is the name of the command.
+	 * @return the rate limit of theCommand per guild.
+	 */
+	public RateLimit getGuildLimit(final String theCommand) {
+		final RateLimit limit = myGuildLimits.get(theCommand);
+		return limit == null ? myGuildLimit : limit;
+	}
+
+	/**
+	 * Returns the setting theKey of theProperties as a positive number, or
+	 * theDefault if it is not set.
+	 *
+	 * @param theProperties are the settings.
+	 * @param theKey is the key of the setting.
+	 * @param theDefault is the value used if the setting is not set.
+	 * @return the value of the setting.
+	 * @throws IllegalArgumentException if the value is not a positive
+	 * number.
+	 */
+	private static long positive(final Properties theProperties,
+								 final String theKey, final long theDefault) {
+		final String value = theProperties.getProperty(theKey);
+		long result = theDefault;
+
+		if (value != null) {
+			result = Long.parseLong(value.trim());
+			if (result <= 0) {
+				throw new IllegalArgumentException(theKey
+												   + " must be positive.");
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.util;
+
+/**
+ * RateLimit.java is how often something may be done: at most a number of
+ * times within a period. It is written in configuration as "count/seconds",
+ * such as "5/60" for five times a minute.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class RateLimit {
+	/**
+	 * The number of times allowed within the period.
+	 */
+	private final int myCount;
+
+	/**
+	 * The length of the period in nanoseconds.
+	 */
+	private final long myPeriodNanos;
+
+	/**
+	 * The constructor of a RateLimit.
+	 *
+	 * @param theCount is the number of times allowed within the period.
+	 * @param theSeconds is the length of the period in seconds.
+	 * @throws IllegalArgumentException if either value is not positive.
+	 */
+	public RateLimit(final int theCount, final long theSeconds) {
+		if (theCount <= 0 || theSeconds <= 0) {
+			throw new IllegalArgumentException("A rate limit must have a "
+					+ "positive count and period.");
+		}
+		myCount = theCount;
+		myPeriodNanos = theSeconds * 1000000000L;
+	}
+
+	/**
+	 * Returns the rate limit written in theText as "count/seconds".
+	 *
+	 * @param theText is the rate limit as text.
+	 * @return the rate limit in theText.
+	 * @throws IllegalArgumentException if theText is not a valid limit.
+	 */
+	public static RateLimit parse(final String theText) {
+		final String[] parts = theText.trim().split("/");
+		if (parts.length != 2) {
+			throw new IllegalArgumentException("A rate limit must be "
+											   + "written as count/seconds.");
+		}
+		return new RateLimit(Integer.parseInt(parts[0].trim()),
+							 Long.parseLong(parts[1].trim()));
+	}
+
+	/**
+	 * Returns the number of times allowed within the period, which is also
+	 * the number of times allowed in a burst.
+	 *
+	 * @return the number of times allowed within the period.
+	 */
+	public int getCount() {
+		return myCount;
+	}
+
+	/**
+	 * Returns the length of the period in nanoseconds.
+	 *
+	 * @return the length of the period in nanoseconds.
+	 */
+	public long getPeriodNanos() {
+		return myPeriodNanos;
+	}
+
+	/**
+	 * Returns the time in nanoseconds it takes to earn back one use.
+	 *
+	 * @return the time in nanoseconds between uses at the steady rate.
+	 */
+	public long getIntervalNanos() {
+		return myPeriodNanos / myCount;
+	}
+
+	/**
+	 * Returns the rate limit as text, "count/seconds".
+	 *
+	 * @return the rate limit as text.
+	 */
+	@Override
+	public String toString() {
+		return myCount + "/" + (myPeriodNanos / 1000000000L);
+	}
+}
@@ -6,19 +6,120 @@
 package bot.discord.StreamBot.util;
 
 /**
- * References.java is a utility class for useful variables.
- *  
+ * References.java is a utility class for useful variables. The values
+ * here are the defaults used by Configuration for settings that are not
+ * set in the configuration file or the environment.
+ *
  * @author Tucker Stewart
  * @version 1.0
  */
 public final class References {
-	/**
-	 * The token for uploading this bot to Discord's servers.
-	 */
-	public static final String TOKEN = process.env.BOT_TOKEN;
-	
 	/**
 	 * The prefix of commands usable by StreamBot.
 	 */
 	public static final String COMMAND_PREFIX = "> ";
+
+	/**
+	 * The location of the file that contains the configuration.
+	 */
+	public static final String CONFIGURATION_FILE = "./streambot.properties";
+
+	/**
+	 * The location of the file that contains system preferences.
+	 */
+	public static final String PREFERENCES_FILE = "./src/main/java/bot/discord/StreamBot/system/preferences.txt";
+
+	/**
+	 * The number of consecutive failed messages to a channel or guild
+	 * before Stream Bot stops sending to it for a while.
+	 */
+	public static final int BREAKER_FAILURE_THRESHOLD = 3;
+
+	/**
+	 * The time in milliseconds Stream Bot waits before trying a channel or
+	 * guild again after it has failed too many times.
+	 */
+	public static final long BREAKER_OPEN_MILLIS = 5 * 60 * 1000;
+
+	/**
+	 * The total number of shards shared by all processes in a cluster.
+	 */
+	public static final int SHARD_TOTAL = 1;
+
+	/**
+	 * The time in milliseconds between checks for changes to the shared
+	 * system preferences and for shards left by other processes.
+	 */
+	public static final long CLUSTER_SYNC_MILLIS = 5000;
+
+	/**
+	 * The number of threads used for scheduled background work.
+	 */
+	public static final int SCHEDULER_THREADS = 1;
+
+	/**
+	 * The length in milliseconds of a tick of the timing wheel that sends
+	 * digests. Digests are sent up to one tick late.
+	 */
+	public static final long DIGEST_TICK_MILLIS = 1000;
+
+	/**
+	 * The longest time in minutes a guild may set between digests.
+	 */
+	public static final int MAX_DIGEST_MINUTES = 24 * 60;
+
+	/**
+	 * The shortest time in milliseconds between edits of the live board
+	 * of a guild. Changes made in between are shown by the next edit.
+	 */
+	public static final long BOARD_INTERVAL_MILLIS = 15 * 1000;
+
+	/**
+	 * How often each user may use each command, as "count/seconds".
+	 */
+	public static final String USER_COMMAND_LIMIT = "5/60";
+
+	/**
+	 * How often each command may be used within a guild, as
+	 * "count/seconds".
+	 */
+	public static final String GUILD_COMMAND_LIMIT = "30/60";
+
+	/**
+	 * The time in milliseconds between removals of users and guilds that
+	 * are no longer rate limited.
+	 */
+	public static final long THROTTLE_SWEEP_MILLIS = 60 * 1000;
+
+	/**
+	 * The number of slots of the event pipeline ring buffer.
+	 */
+	public static final int PIPELINE_SIZE = 1024;
+
+	/**
+	 * The number of threads that send messages and run commands for the
+	 * event pipeline.
+	 */
+	public static final int PIPELINE_DISPATCHERS = 2;
+
+	/**
+	 * The longest time in minutes events are kept by the always-on flight
+	 * recording.
+	 */
+	public static final int PROFILING_MAX_AGE_MINUTES = 30;
+
+	/**
+	 * The most megabytes of events kept by the always-on flight recording.
+	 */
+	public static final int PROFILING_MAX_SIZE_MB = 64;
+
+	/**
+	 * The directory flight recording dumps are written to.
+	 */
+	public static final String PROFILING_DIRECTORY = ".";
+
+	/**
+	 * The number of flight recording dumps kept in the dump directory.
+	 */
+	public static final int PROFILING_DUMPS = 5;
 }
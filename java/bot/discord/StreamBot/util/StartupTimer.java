@@ -0,0 +1,58 @@
+/*
+ * Discord - Stream Bot
+ * Tucker Reed Stewart
+ */
+
+package bot.discord.StreamBot.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StartupTimer.java records how long after the JVM started each step of
+ * starting Stream Bot finished, so slow restarts can be traced to the step
+ * that caused them. Steps may finish on any thread.
+ *
+ * @author Tucker Stewart
+ * @version 1.0
+ */
+public final class StartupTimer {
+	/**
+	 * The prefix of the line printed by report().
+	 */
+	public static final String REPORT_PREFIX = "Startup:";
+
+	/**
+	 * Each step that has finished, with its time, in the order they
+	 * finished.
+	 */
+	private static final List<String> STEPS = new ArrayList<String>();
+
+	/**
+	 * Records that theStep has finished.
+	 *
+	 * @param theStep is the name of the step.
+	 */
+	public static void mark(final String theStep) {
+		final long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		synchronized (STEPS) {
+			STEPS.add(theStep + " " + uptime + " ms");
+		}
+	}
+
+	/**
+	 * Prints every step recorded so far on one line, such as
+	 * "Startup: main 80 ms, preferences 95 ms, ready 2300 ms".
+	 */
+	public static void report() {
+		final StringBuilder builder = new StringBuilder(REPORT_PREFIX);
+		synchronized (STEPS) {
+			for (int i = 0; i < STEPS.size(); i++) {
+				builder.append(i == 0 ? " " : ", ");
+				builder.append(STEPS.get(i));
+			}
+		}
+		System.out.println(builder.toString());
+	}
+}